@@ -0,0 +1,44 @@
+// terrain held entirely in memory as one byte array, stored row by row (tile (y,x) is at y * width + x)
+public class ArrayTileStore implements TileStore {
+    // terrain bytes, may be longer than needed
+    private final byte[] tiles;
+    // number of columns of the map
+    private final int width;
+
+    // Constructor
+    // @param : terrain stored row by row and number of columns
+    public ArrayTileStore(byte[] tiles, int width) {
+        this.tiles = tiles;
+        this.width = width;
+    }
+
+    @Override
+    public byte get(int y, int x) {
+        return tiles[y * width + x];
+    }
+
+    @Override
+    public void set(int y, int x, byte tile) {
+        tiles[y * width + x] = tile;
+    }
+
+    @Override
+    public TileStore copy() {
+        return new ArrayTileStore(tiles.clone(), width);
+    }
+
+    // nothing to write back, the terrain only lives in memory
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // array() returns the terrain array itself, for code that scans the whole map
+    // @return : terrain stored row by row
+    public byte[] array() {
+        return tiles;
+    }
+}
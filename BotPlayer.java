@@ -1,25 +1,81 @@
 import java.util.ArrayList;
-import java.util.Random;
-import java.util.List;
 
 // class for the bot player, a subclass of player
 // inherits all attributes and methods of player
 // has private methods limited to the bot player subclass for decision-making
-public class BotPlayer extends Player {
+public class BotPlayer extends Player implements Strategy {
     // the action to be entered by the bot this round
     private String action;
-    // 2d char array storing the nearby map 'seen' by the bot through look command
-    private char[][] nearby;
+    // the nearby map 'seen' by the bot through look command, filled in place by the game each look
+    private final Viewport view;
     // the gold needed to win the map received by 'hello' command
     private int gold_needed;
     // arraylist storing moves to be performed by the bot in following rounds
-    private ArrayList<String> moves = new ArrayList<>();
+    private ArrayList<String> moves;
     // round number counter
     private int round = 1;
+    // path search reused for every destination, so no search state is allocated per decision
+    private final PathFinder pathFinder = new PathFinder();
+    // memory of every tile the bot has seen, by absolute map coordinates
+    private WorldModel world;
+    // incremental planner for routes to remembered tiles out of view
+    private final DStarLite planner = new DStarLite();
+    // growth count of the world model when the planner was last reset
+    private int plannerGrowths = -1;
+    // decisions from the view shared with other bots, null to always search
+    private PlanCache planCache = PlanCache.shared();
+    // explored tiles next to unexplored ground, where exploring heads for
+    private final PathFinder.Goal frontier = (y, x) -> world.isFrontier(y, x);
+    // direction commands and grid steps in the planner's direction order: south, east, north, west
+    private static final String[] MOVES = {"s", "e", "n", "w"};
+    private static final int[] STEP_Y = {1, 0, -1, 0};
+    private static final int[] STEP_X = {0, 1, 0, -1};
+    // the nearby map seen through the Grid interface for path searches, walls '#' cannot be walked on
+    private final Grid nearbyGrid = new Grid() {
+        public int getHeight() {
+            return view.getSide();
+        }
+
+        public int getWidth() {
+            return view.getSide();
+        }
+
+        public boolean isWalkable(int y, int x) {
+            return view.get(y, x) != '#';
+        }
+    };
+
+    // random number generator for moves when there is nothing to head for, seeded by the game so it can be replayed
+    private final CopyableRandom rand;
 
     // Constructor
     public BotPlayer(int gold, int y, int x, char currentTile, char indicator) {
+        this(gold, y, x, currentTile, indicator, new CopyableRandom());
+    }
+
+    // Constructor for a bot whose random moves come from a given (seeded) generator
+    public BotPlayer(int gold, int y, int x, char currentTile, char indicator, CopyableRandom rand) {
         super(gold, y, x, currentTile, indicator);
+        this.rand = rand;
+        view = new Viewport(2);
+        moves = new ArrayList<>();
+        world = new WorldModel();
+    }
+
+    // Copy constructor - the copy remembers the same map and makes the same random moves as the original
+    // the route planner is not copied, the copy starts a new plan the next time it needs one, which may break
+    // ties between equally short routes differently from the original's repaired plan
+    // @param : the bot to copy
+    public BotPlayer(BotPlayer other) {
+        super(other);
+        action = other.action;
+        view = new Viewport(other.view);
+        gold_needed = other.gold_needed;
+        moves = new ArrayList<>(other.moves);
+        round = other.round;
+        world = new WorldModel(other.world);
+        rand = other.rand.copy();
+        planCache = other.planCache;
     }
 
     // Accessors
@@ -29,12 +85,23 @@ public class BotPlayer extends Player {
         return action;
     }
 
+    // getView() returns the viewport the bot sees the map through, for the game to fill on a look
+    // @return : the bot's viewport
+    public Viewport getView() {
+        return view;
+    }
+
     // Mutators
     // setGold_needed(int) sets the gold needed for the bot to win
     public void setGold_needed(int n) {
         gold_needed = n;
     }
 
+    // setPlanCache(PlanCache) sets where decisions from the view are remembered, null to always search
+    public void setPlanCache(PlanCache planCache) {
+        this.planCache = planCache;
+    }
+
     // nextAction() decides what action is to be made by the bot this turn
     public void nextAction() {
         if (round > 2) {
@@ -74,39 +141,48 @@ public class BotPlayer extends Player {
         round += 1;
     }
 
-    // setSurrounding(String) converts the string map from look into a 2d character array map and stores it
-    public void setNearby(String miniMap) {
-        // nearby: a temporary 5x5 character array
-        nearby = new char[5][5];
-        // n: an integer counter that is incremented after each successful execution of the following loops
-        // to ensure the correct character is being read from the string map
-        int n = 0;
-        // outer loop to cycle through the 5 rows - i: y-coordinate
-        for (int i = 0; i < 5; i++) {
-            // inner loop to cycle through each of the 5 elements within each row - j: x-coordinate
-            for (int j = 0; j < 5; j++) {
-                // set current i,j (y,x) coordinate of nearby map to the character in equivalent coordinates on minimap
-                // as long as current character is not newline
-                if (miniMap.charAt(i) != '\n') {
-                    nearby[i][j] = miniMap.charAt(n);
-                    // increment counter n to move to next character in the string
-                }
-                n += 1;
-            }
-            n += 1;
+    // nextCommand() decides the bot's action this turn and returns it to be processed
+    // @return : bot's action to be carried out
+    @Override
+    public String nextCommand() {
+        nextAction();
+        return action;
+    }
+
+    // observe(String, String) reads the response to the bot's action
+    // after a look the minimap is stored and the next destination is calculated from it
+    // @param : the action processed and its response
+    @Override
+    public void observe(String command, String response) {
+        if ("look".equals(command)) {
+            setNearby(response);
+            nextDestination();
         }
     }
 
+    // observeView() calculates the next destination after the game has filled the bot's viewport directly,
+    // so a look by a bot needs no text to be built and read back
+    public void observeView() {
+        nextDestination();
+    }
+
+    // setNearby(String) reads the string map from look into the bot's viewport
+    // @param : the look response
+    public void setNearby(String miniMap) {
+        view.parse(miniMap);
+    }
+
     // findEntity(char) checks if a character exists nearby, if so, return coordinates of that character
     // @param : the character to be found
     // @return : the coordinates of the character if found, otherwise nothing
     private int[] findEntity(char entity) {
-        // loops through all 5 rows
-        for (int i = 0; i < 5; i++) {
-            // loops through all 5 columns within each row
-            for (int j = 0; j < 5; j++) {
+        int side = view.getSide();
+        // loops through all rows
+        for (int i = 0; i < side; i++) {
+            // loops through all columns within each row
+            for (int j = 0; j < side; j++) {
                 // if characters match return the current counts of loops - the coordinates of specified entity
-                if (nearby[i][j] == entity) {
+                if (view.get(i, j) == entity) {
                     return new int[]{i, j};
                 }
             }
@@ -116,181 +192,171 @@ public class BotPlayer extends Player {
 
     // nextDestination() decides what the bot's next destination is by looking through where
     // all nearby entities within its minimap are: P - human player, G - gold, E - exit
+    // the minimap is first added to the bot's memory of the map, which is used when nothing useful is in view
+    // the decision from the minimap is looked up in the plan cache first, see PlanCache
     public void nextDestination() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        chooseDestination();
+        if (Metrics.ENABLED) {
+            Metrics.botPlan(start);
+        }
+    }
+
+    // chooseDestination() adds the moves to the next destination, see nextDestination()
+    private void chooseDestination() {
+        int[] pos = getCoord();
+        world.merge(view, pos[0], pos[1], getCurrentTile());
+        boolean goldDone = getGold() == gold_needed;
+        PlanCache.Key key = planCache == null ? null : PlanCache.key(view, goldDone);
+        String plan = key == null ? null : key.hasTarget() ? planCache.get(key) : "";
+        if (plan == null) {
+            plan = planInView(goldDone);
+            if (key != null) {
+                planCache.put(key, plan);
+            }
+        }
+        for (int i = 0; i < plan.length(); i++) {
+            moves.add(move(plan.charAt(i)));
+        }
+        if (!moves.isEmpty()) {
+            return;
+        }
+        // nothing reachable in view: head for the nearest remembered exit or gold
+        int[] remembered = getGold() == gold_needed ? world.nearestExit(pos[0], pos[1])
+                : world.nearestGold(pos[0], pos[1]);
+        if (remembered != null) {
+            planTo(pos, remembered);
+        }
+        // otherwise explore towards the closest unexplored part of the map
+        if (moves.isEmpty()) {
+            explore(pos);
+        }
+        // move anywhere that isn't a wall if the whole reachable map has been explored
+        if (moves.isEmpty()) {
+            randomDestination();
+        }
+    }
+
+    // planInView(boolean) decides where to head for in the minimap
+    // @param : whether the bot has all the gold it needs
+    // @return : the moves as direction characters, empty if nothing in view is worth heading for
+    private String planInView(boolean goldDone) {
         // find coordinates of all 'useful' entities to move to
         int[] player_coord = findEntity('P');
         int[] gold_coord = findEntity('G');
         int[] exit_coord = findEntity('E');
+        int[] target = null;
 
         // priority to move to an exit to the map if all gold is collected
-        if (getGold() == gold_needed) {
-            if (exit_coord != null) {
-                findPathTo(exit_coord[0], exit_coord[1]);
-            } else {
-                // move to a random location to try and find an exit
-                randomDestination();
-            }
+        if (goldDone) {
+            target = exit_coord;
 
             // next priority is to collect gold if not gold is collected
         } else if (gold_coord != null) {
-            findPathTo(gold_coord[0], gold_coord[1]);
+            target = gold_coord;
 
             // if not all gold is collected and no gold is within view, try to catch player
         } else if (player_coord != null) {
-            findPathTo(player_coord[0], player_coord[1]);
-
-            // if no entities within view, move to find entities
-        } else {
-            // move anywhere that isn't a wall to try and find gold/player/exit
-            randomDestination();
+            target = player_coord;
         }
-    }
-
-    // canMove(Pos) returns if a bot can move to a specified tile
-    // @param : position of tile
-    // @return : boolean value of whether the bot can move to the specified tile
-    private boolean canMove(Pos pos) {
-        // retrieve y and x coordinates of the position by getCoord() method
-        int ycoord = pos.getCoord()[0];
-        int xcoord = pos.getCoord()[1];
-        // check if either x or y coordinates are out of bounds (beyond 5x5 minimap)
-        // if so return false
-        if (ycoord < 0 || ycoord > 4) {
-            return false;
+        if (target == null) {
+            return "";
         }
-        if (xcoord < 0 || xcoord > 4) {
-            return false;
+        // starting position on the minimap is (radius,radius) as player is at centre
+        int centre = view.getRadius();
+        int length = pathFinder.findPath(nearbyGrid, centre, centre, target[0], target[1]);
+        StringBuilder plan = new StringBuilder(Math.max(length, 0));
+        for (int i = 0; i < length; i++) {
+            plan.append(pathFinder.getStep(i));
         }
-        // return boolean value of whether the specified tile is a wall '#'
-        return nearby[ycoord][xcoord] != '#';
+        return plan.toString();
     }
 
-    // posConnected(Pos) returns a list of connected positions on the minimap that the bot can move to
-    // @return : list of positions on the minimap that can be moved to
-    private List<Pos> posConnected(Pos pos) {
-        List<Pos> connected = new ArrayList<>();
-        // position to the north of current position
-        Pos n = pos.offset(1, 0);
-        // position to the east of current position
-        Pos e = pos.offset(0, 1);
-        // position to the south of current position
-        Pos s = pos.offset(-1, 0);
-        // position to the west of current position
-        Pos w = pos.offset(0, -1);
-        // check if each direction is movable from current position
-        // if so, add to list of connected positions
-        if (canMove(n)) {
-            connected.add(n);
-        }
-        if (canMove(e)) {
-            connected.add(e);
-        }
-        if (canMove(s)) {
-            connected.add(s);
+    // planTo(int[], int[]) adds moves towards a remembered tile out of view
+    // the route is kept by a D* Lite planner between decisions and only repaired where newly seen tiles
+    // changed it; moves are only added up to the edge of explored ground, where the bot looks again
+    // @param : absolute coordinates of the bot and of the target
+    private void planTo(int[] pos, int[] target) {
+        int oy = world.getOriginY();
+        int ox = world.getOriginX();
+        int sy = pos[0] - oy;
+        int sx = pos[1] - ox;
+        int gy = target[0] - oy;
+        int gx = target[1] - ox;
+        int changes = world.takeChanges();
+        if (planner.isPlanning(world, gy, gx) && plannerGrowths == world.getGrowths()) {
+            planner.moveStart(sy, sx);
+            int[] changed = world.getChanged();
+            int width = world.getWidth();
+            for (int i = 0; i < changes; i++) {
+                planner.tileChanged(changed[i] / width, changed[i] % width);
+            }
+        } else {
+            planner.reset(world, sy, sx, gy, gx);
+            plannerGrowths = world.getGrowths();
         }
-        if (canMove(w)) {
-            connected.add(w);
+        if (!planner.compute()) {
+            return;
         }
-        // return the list of connected positions
-        return connected;
-    }
-
-    // pathFromTo(Pos, Pos) returns a possible path between two positions within the minimap
-    // @param : the starting and ending positions
-    // @return : a possible path of coordinates, or nothing if no path is found
-    private List<Pos> pathFromTo(Pos start, Pos end) {
-        // complete set to false at the start as no possible path has yet been found
-        boolean complete = false;
-        List<Pos> tried = new ArrayList<>();
-        // add starting position to list of tried positions
-        tried.add(start);
-        // try to find path between start and end positions as long as one has not been found
-        while (!complete) {
-            List<Pos> newOpen = new ArrayList<>();
-            // loop through positions in tried list and find its connected positions
-            for (int i = 0; i < tried.size(); i++) {
-                Pos pos = tried.get(i);
-                for (Pos connected : posConnected(pos)) {
-                    if (!tried.contains(connected) && !newOpen.contains(connected)) {
-                        newOpen.add(connected);
-                    }
-                }
-            }
-            for (Pos pos : newOpen) {
-                tried.add(pos);
-                if (end.equals(pos)) {
-                    complete = true;
-                    break;
-                }
-            }
-
-            if (!complete && newOpen.isEmpty()) {
-                return null;
+        int y = sy;
+        int x = sx;
+        while ((y != gy || x != gx) && moves.size() < world.getHeight() * world.getWidth()) {
+            int d = planner.nextStep(y, x);
+            int ny = y + STEP_Y[d];
+            int nx = x + STEP_X[d];
+            // stop at the edge of explored ground, the rest of the route is only a guess
+            if (world.get(ny + oy, nx + ox) == WorldModel.UNKNOWN) {
+                break;
             }
+            moves.add(MOVES[d]);
+            y = ny;
+            x = nx;
         }
-        List<Pos> path = new ArrayList<>();
-        Pos pos = tried.get(tried.size() - 1);
-        while (pos.getPrevious_pos() != null) {
-            path.add(0, pos);
-            pos = pos.getPrevious_pos();
-        }
-
-        return path;
     }
 
-    // translatePath() takes a list of connected coordinates and translates them to a movement direction
-    // n, e, s, w - then assign them to a private array moves to be later processed
-    // for the bot to move through the path indicated
-    // @param : the path to be taken by the bot from current position to destination
-    private void translatePath(List<Pos> path) {
-        // set current position to (2,2) - format (y,x) - as player at centre of 5x5 minimap
-        int[] current = {2, 2};
-        // for each position within path, compare with last coordinates
-        for (Pos pos : path) {
-            int[] next = pos.getCoord();
-            // next y > current y, meaning it is down - s
-            if (next[0] > current[0]) {
-                moves.add("s");
-                // next y < current y, meaning it is up - n
-            } else if (next[0] < current[0]) {
-                moves.add("n");
-                // next x > current x, meaning it is right - e
-            } else if (next[1] > current[1]) {
-                moves.add("e");
-                // next x < current x, meaning it is left - w
-            } else if (next[1] < current[1]) {
-                moves.add("w");
-            }
-            // set current position to next position, for comparing with the position after
-            current = next;
+    // explore(int[]) adds moves to the closest explored tile next to unexplored ground
+    // @param : absolute coordinates of the bot
+    private void explore(int[] pos) {
+        int length = pathFinder.findPathToNearest(world.knownGrid(),
+                pos[0] - world.getOriginY(), pos[1] - world.getOriginX(), frontier);
+        for (int i = 0; i < length; i++) {
+            moves.add(move(pathFinder.getStep(i)));
         }
     }
 
-    // findPathTo() finds a possible path from a specified y and x coordinate on the 5x5 minimap
-    // passes starting values to pathFromTo(), retrieving a list of coordinates of the path to be taken
-    // the list of path coordinates are passed to translatePath() for directions
-    // @param : starting y coordinate & starting x coordinate
+    // findPathTo() finds a shortest path from the centre of the minimap to a specified y and x coordinate
+    // then adds the directions of the path to the moves list
+    // @param : ending y coordinate & ending x coordinate
     private void findPathTo(int endy, int endx) {
-        // starting position on 5x5 minimap (2,2) as player is at centre
-        Pos start = new Pos(2, 2, null);
-        Pos end = new Pos(endy, endx, null);
-        List<Pos> path = pathFromTo(start, end);
-        // translates path coordinates to directions if a possible path exists (if isn't empty)
-        if (path != null) {
-            translatePath(path);
+        // starting position on the minimap is (radius,radius) as player is at centre
+        int centre = view.getRadius();
+        int length = pathFinder.findPath(nearbyGrid, centre, centre, endy, endx);
+        // translates path to directions if a possible path exists
+        for (int i = 0; i < length; i++) {
+            moves.add(move(pathFinder.getStep(i)));
         }
     }
 
+    // move(char) returns the command for a direction without creating a new string
+    // @param : direction character
+    // @return : direction command
+    private static String move(char direction) {
+        switch (direction) {
+            case 'n': return "n";
+            case 'e': return "e";
+            case 's': return "s";
+            default: return "w";
+        }
+    }
 
-    // randomDestination() generates a random path for the bot within the 5x5 minimap
-    // used when no entity is left within the minimap after looking
+    // randomDestination() generates a random path for the bot within the minimap
+    // used when no entity is left within the minimap and there is nothing left to explore
     private void randomDestination() {
-        Random rand = new Random();
-        // loop until valid move(s) are generated
-        while (moves.isEmpty()) {
-            // generate integer y and x coordinates between 0-5
-            int ry = rand.nextInt(0, 6);
-            int rx = rand.nextInt(0, 6);
+        // loop until valid move(s) are generated, giving up if the bot is walled in
+        for (int tries = 0; moves.isEmpty() && tries < 100; tries++) {
+            // generate integer y and x coordinates within the minimap
+            int ry = rand.nextInt(0, view.getSide());
+            int rx = rand.nextInt(0, view.getSide());
             // pass coordinates to findPath(int,int) method to generate path and moves
             findPathTo(ry, rx);
         }
@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+
+// terrain of a very large map kept on disk and loaded in square chunks the first time they are used
+// at most maxChunks chunks are kept in memory, the least recently used chunk is evicted when another is needed
+// and written back to the file first if it was changed (e.g. gold was picked up)
+// the file must be a map file whose rows all have the same length, so a tile's position in the file
+// can be worked out from its coordinates; changed tiles are written back in place
+// not thread safe, a map is only used by the thread running its game
+public class ChunkedTileStore implements TileStore {
+    // file the terrain is read from and written back to
+    private final FileChannel channel;
+    // position of the first row in the file
+    private final long dataOffset;
+    // bytes from the start of one row to the start of the next (row length plus line ending)
+    private final long rowStride;
+    // size of the map
+    private final int height;
+    private final int width;
+    // side length of a chunk in tiles
+    private final int chunkSize;
+    // chunks in memory, in least recently used order
+    private final LinkedHashMap<Long, Chunk> chunks;
+    // most recently used chunk, saves a hash lookup when the same area is read repeatedly
+    private long lastKey = -1;
+    private Chunk lastChunk;
+    // number of chunks loaded from disk and written back, for tuning the cache size
+    private long loads;
+    private long writes;
+
+    // a square of terrain loaded from the file
+    private static final class Chunk {
+        // first row and column of the chunk
+        final int y0;
+        final int x0;
+        // tiles of the chunk, chunkSize * chunkSize, row by row
+        final byte[] tiles;
+        // true if any tile has changed since the chunk was loaded
+        boolean dirty;
+
+        Chunk(int y0, int x0, int chunkSize) {
+            this.y0 = y0;
+            this.x0 = x0;
+            tiles = new byte[chunkSize * chunkSize];
+        }
+    }
+
+    // Constructor
+    // @param : open file, position of the first row, bytes per row including line ending, map size,
+    //          chunk side length and maximum chunks held in memory
+    public ChunkedTileStore(FileChannel channel, long dataOffset, long rowStride, int height, int width,
+                            int chunkSize, int maxChunks) {
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.rowStride = rowStride;
+        this.height = height;
+        this.width = width;
+        this.chunkSize = chunkSize;
+        chunks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<Long, Chunk> eldest) {
+                if (size() <= maxChunks) {
+                    return false;
+                }
+                try {
+                    writeBack(eldest.getValue());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (eldest.getValue() == lastChunk) {
+                    lastChunk = null;
+                    lastKey = -1;
+                }
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public byte get(int y, int x) {
+        Chunk chunk = chunk(y, x);
+        return chunk.tiles[(y - chunk.y0) * chunkSize + (x - chunk.x0)];
+    }
+
+    @Override
+    public void set(int y, int x, byte tile) {
+        Chunk chunk = chunk(y, x);
+        int i = (y - chunk.y0) * chunkSize + (x - chunk.x0);
+        if (chunk.tiles[i] != tile) {
+            chunk.tiles[i] = tile;
+            chunk.dirty = true;
+        }
+    }
+
+    // a chunked map is backed by a single file, copies would overwrite each other's changes
+    @Override
+    public TileStore copy() {
+        throw new UnsupportedOperationException("Chunked maps cannot be copied");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (Chunk chunk : chunks.values()) {
+            writeBack(chunk);
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // getLoads() returns the number of chunks read from disk so far
+    public long getLoads() {
+        return loads;
+    }
+
+    // getWrites() returns the number of chunks written back to disk so far
+    public long getWrites() {
+        return writes;
+    }
+
+    // getChunkSize() returns the side length of a chunk in tiles
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    // getLoadedChunks() returns the number of chunks currently in memory
+    public int getLoadedChunks() {
+        return chunks.size();
+    }
+
+    // chunk(y, x) returns the chunk holding a tile, loading it from disk if it is not in memory
+    private Chunk chunk(int y, int x) {
+        int cy = y / chunkSize;
+        int cx = x / chunkSize;
+        long key = ((long) cy << 32) | cx;
+        if (key == lastKey) {
+            return lastChunk;
+        }
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = new Chunk(cy * chunkSize, cx * chunkSize, chunkSize);
+            try {
+                load(chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            chunks.put(key, chunk);
+        }
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    // load(Chunk) reads the tiles of a chunk from the file, one row segment at a time
+    private void load(Chunk chunk) throws IOException {
+        int rows = Math.min(chunkSize, height - chunk.y0);
+        int cols = Math.min(chunkSize, width - chunk.x0);
+        for (int r = 0; r < rows; r++) {
+            ByteBuffer buf = ByteBuffer.wrap(chunk.tiles, r * chunkSize, cols);
+            long pos = dataOffset + (chunk.y0 + r) * rowStride + chunk.x0;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, pos);
+                if (n < 0) {
+                    throw new IOException("Map file ended early at row " + (chunk.y0 + r));
+                }
+                pos += n;
+            }
+        }
+        loads += 1;
+    }
+
+    // writeBack(Chunk) writes the tiles of a changed chunk back to the file
+    private void writeBack(Chunk chunk) throws IOException {
+        if (!chunk.dirty) {
+            return;
+        }
+        int rows = Math.min(chunkSize, height - chunk.y0);
+        int cols = Math.min(chunkSize, width - chunk.x0);
+        for (int r = 0; r < rows; r++) {
+            ByteBuffer buf = ByteBuffer.wrap(chunk.tiles, r * chunkSize, cols);
+            long pos = dataOffset + (chunk.y0 + r) * rowStride + chunk.x0;
+            while (buf.hasRemaining()) {
+                pos += channel.write(buf, pos);
+            }
+        }
+        chunk.dirty = false;
+        writes += 1;
+    }
+}
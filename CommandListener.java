@@ -0,0 +1,9 @@
+// interface for anything that follows the commands a game processes, e.g. the replay journal
+// registered with GameLogic.setCommandListener(), called for every command in the order they are played
+public interface CommandListener {
+
+    // commandProcessed(Player, byte, String) is called after a command has been carried out,
+    // before the turn passes to the next player
+    // @param : the player or bot whose command it was, opcode of the command and its response
+    void commandProcessed(Player actor, byte op, String response);
+}
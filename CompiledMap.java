@@ -0,0 +1,377 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// binary map format, several times smaller than the text format and loaded with a few bulk reads
+// layout, big-endian:
+//   header  : magic "DODM" (int), version (short), height, width, gold required (ints),
+//             CRC-32 of everything after the header (int)
+//   name    : length in bytes (short, -1 for a map without a name) then the name in UTF-8
+//   tables  : number of gold tiles and of exit tiles (ints), then the position (y * width + x, int) of each,
+//             gold first, so the map's gold and exit indexes are built without scanning the terrain;
+//             both numbers are -1 and no positions follow when there are too many to be worth storing
+//   body    : the terrain row by row, in whichever of two encodings is smaller for the map:
+//             RUNS   - runs of (tile byte, run length as a base-128 varint), for maps of large open areas
+//             PACKED - the distinct tiles (count byte, then the tiles), bits per tile (1, 2, 4 or 8),
+//                      then each tile as its index among them, lowest bits of each byte first,
+//                      for maps whose tiles change every few steps
+// MapLoader recognises the magic, so compiled maps open anywhere a text map does; see MapConverter to make one
+public final class CompiledMap {
+    // first bytes of every compiled map, "DODM"
+    public static final int MAGIC = 0x444F444D;
+    // version of the format written
+    public static final short VERSION = 1;
+    // bytes of the fixed header
+    private static final int HEADER = 22;
+    // encodings of the body
+    private static final byte RUNS = 0;
+    private static final byte PACKED = 1;
+    // tables are only stored for maps with at most one gold or exit tile per this many tiles
+    private static final int TABLE_DENSITY = 64;
+    // view of a byte array as little-endian longs, for unpacking eight tiles per write
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private CompiledMap() {
+    }
+
+    // write(Map, Path) writes the terrain of a map as a compiled map file, players and bots are not written
+    // the map is scanned twice, once to choose the encoding and once to write, so no copy of it is built
+    // @param : the map and the file to write
+    // @throws : IOException if the file cannot be written
+    public static void write(Map map, Path file) throws IOException {
+        int height = map.getHeight();
+        int width = map.getWidth();
+        // first pass: tables, distinct tiles and the size of the body as runs
+        int[] gold = new int[16];
+        int[] exits = new int[16];
+        int goldCount = 0;
+        int exitCount = 0;
+        // the tables are left out when they would hold more positions than this
+        long tableLimit = (long) height * width / TABLE_DENSITY;
+        boolean[] seen = new boolean[256];
+        long runBytes = 0;
+        int run = 0;
+        char runTile = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                char tile = map.getTerrain(y, x);
+                if (goldCount + exitCount > tableLimit) {
+                    // already too many, stop collecting
+                } else if (tile == 'G') {
+                    gold = grow(gold, goldCount);
+                    gold[goldCount++] = y * width + x;
+                } else if (tile == 'E') {
+                    exits = grow(exits, exitCount);
+                    exits[exitCount++] = y * width + x;
+                }
+                seen[tile & 0xFF] = true;
+                if (tile == runTile && run > 0) {
+                    run += 1;
+                } else {
+                    runBytes += run == 0 ? 0 : 1 + varintLength(run);
+                    runTile = tile;
+                    run = 1;
+                }
+            }
+        }
+        runBytes += 1 + varintLength(run);
+        byte[] palette = new byte[256];
+        byte[] index = new byte[256];
+        int paletteSize = 0;
+        for (int tile = 0; tile < 256; tile++) {
+            if (seen[tile]) {
+                index[tile] = (byte) paletteSize;
+                palette[paletteSize++] = (byte) tile;
+            }
+        }
+        int bits = paletteSize <= 2 ? 1 : paletteSize <= 4 ? 2 : paletteSize <= 16 ? 4 : 8;
+        long packedBytes = 2 + paletteSize + ((long) height * width * bits + 7) / 8;
+
+        // second pass: write everything after the header, then the header with the checksum of it
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+            String name = map.getMapName();
+            if (name == null) {
+                out.writeShort(-1);
+            } else {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            if (goldCount + exitCount > tableLimit) {
+                goldCount = -1;
+                exitCount = -1;
+            }
+            out.writeInt(goldCount);
+            out.writeInt(exitCount);
+            for (int i = 0; i < goldCount; i++) {
+                out.writeInt(gold[i]);
+            }
+            for (int i = 0; i < exitCount; i++) {
+                out.writeInt(exits[i]);
+            }
+            if (runBytes <= packedBytes) {
+                out.writeByte(RUNS);
+                writeRuns(map, out);
+            } else {
+                out.writeByte(PACKED);
+                out.writeByte(paletteSize - 1);
+                out.write(palette, 0, paletteSize);
+                out.writeByte(bits);
+                writePacked(map, out, index, bits);
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putShort(VERSION).putInt(height).putInt(width).putInt(map.getGoldRequired())
+                    .putInt((int) crc.getValue()).flip();
+            channel.write(header, 0);
+        }
+    }
+
+    // writeRuns(Map, DataOutputStream) writes the terrain as runs of the same tile
+    private static void writeRuns(Map map, DataOutputStream out) throws IOException {
+        int run = 0;
+        char runTile = 0;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                char tile = map.getTerrain(y, x);
+                if (tile == runTile && run > 0) {
+                    run += 1;
+                } else {
+                    writeRun(out, runTile, run);
+                    runTile = tile;
+                    run = 1;
+                }
+            }
+        }
+        writeRun(out, runTile, run);
+    }
+
+    // writeRun(DataOutputStream, char, int) writes a run of one tile, nothing for an empty run
+    private static void writeRun(DataOutputStream out, char tile, int run) throws IOException {
+        if (run == 0) {
+            return;
+        }
+        out.write((byte) tile);
+        while (run >= 0x80) {
+            out.write((run & 0x7F) | 0x80);
+            run >>>= 7;
+        }
+        out.write(run);
+    }
+
+    // writePacked(Map, DataOutputStream, byte[], int) writes the terrain as palette indexes of a few bits each
+    private static void writePacked(Map map, DataOutputStream out, byte[] index, int bits) throws IOException {
+        int current = 0;
+        int used = 0;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                current |= (index[map.getTerrain(y, x) & 0xFF] & 0xFF) << used;
+                used += bits;
+                if (used == 8) {
+                    out.write(current);
+                    current = 0;
+                    used = 0;
+                }
+            }
+        }
+        if (used > 0) {
+            out.write(current);
+        }
+    }
+
+    // isCompiled(ByteBuffer, int) returns if a file's contents start with the compiled map magic
+    // @param : the file contents and their size
+    public static boolean isCompiled(ByteBuffer buf, int size) {
+        return size >= 4 && buf.getInt(0) == MAGIC;
+    }
+
+    // read(ByteBuffer, int) reads a compiled map
+    // @param : the file contents and their size
+    // @return : the map, with its gold and exit positions ready for its indexes if the file has them
+    // @throws : IOException if the file is of another version, is cut short or fails its checksum
+    public static Map read(ByteBuffer buf, int size) throws IOException {
+        if (size < HEADER + 11 || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled map");
+        }
+        short version = buf.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled map version " + version);
+        }
+        int height = buf.getInt(6);
+        int width = buf.getInt(10);
+        int goldRequired = buf.getInt(14);
+        int checksum = buf.getInt(18);
+        if (height <= 0 || width <= 0 || (long) height * width > Integer.MAX_VALUE - 8) {
+            throw new IOException("Compiled map has bad dimensions " + height + "x" + width);
+        }
+        // one bulk read of everything after the header, checked before any of it is trusted
+        byte[] data = new byte[size - HEADER];
+        buf.get(HEADER, data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Compiled map failed its checksum");
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        String name = null;
+        int nameLength = in.getShort();
+        if (nameLength >= 0) {
+            name = new String(data, in.position(), nameLength, StandardCharsets.UTF_8);
+            in.position(in.position() + nameLength);
+        }
+        int goldCount = in.getInt();
+        int exitCount = in.getInt();
+        boolean tables = goldCount != -1 || exitCount != -1;
+        if (tables && (goldCount < 0 || exitCount < 0 || 4L * (goldCount + exitCount) >= in.remaining())) {
+            throw new IOException("Compiled map has bad tile tables");
+        }
+        int[] gold = new int[Math.max(0, goldCount)];
+        int[] exits = new int[Math.max(0, exitCount)];
+        in.asIntBuffer().get(gold).get(exits);
+        int pos = in.position() + 4 * (gold.length + exits.length);
+
+        byte[] tiles = new byte[height * width];
+        byte encoding = data[pos++];
+        if (encoding == RUNS) {
+            readRuns(data, pos, tiles);
+        } else if (encoding == PACKED) {
+            readPacked(data, pos, tiles);
+        } else {
+            throw new IOException("Compiled map has an unknown encoding " + encoding);
+        }
+        for (int[] table : new int[][]{gold, exits}) {
+            for (int position : table) {
+                if (position < 0 || position >= tiles.length) {
+                    throw new IOException("Compiled map has bad tile tables");
+                }
+            }
+        }
+        Map map = new Map(name, goldRequired, height, width, new ArrayTileStore(tiles, width));
+        if (tables) {
+            map.setTileTables(gold, exits);
+        }
+        return map;
+    }
+
+    // readRuns(byte[], int, byte[]) expands the runs of a body straight into the terrain array
+    private static void readRuns(byte[] data, int pos, byte[] tiles) throws IOException {
+        int filled = 0;
+        while (pos < data.length) {
+            byte tile = data[pos++];
+            int run = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (pos >= data.length || shift > 28) {
+                    throw new IOException("Compiled map has a bad run");
+                }
+                byte b = data[pos++];
+                run |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (run <= 0 || run > tiles.length - filled) {
+                throw new IOException("Compiled map has a bad run");
+            }
+            Arrays.fill(tiles, filled, filled + run, tile);
+            filled += run;
+        }
+        if (filled != tiles.length) {
+            throw new IOException("Compiled map is cut short");
+        }
+    }
+
+    // readPacked(byte[], int, byte[]) unpacks the palette indexes of a body into the terrain array
+    private static void readPacked(byte[] data, int pos, byte[] tiles) throws IOException {
+        if (pos + 1 >= data.length) {
+            throw new IOException("Compiled map is cut short");
+        }
+        int paletteSize = (data[pos++] & 0xFF) + 1;
+        if (pos + paletteSize >= data.length) {
+            throw new IOException("Compiled map is cut short");
+        }
+        byte[] palette = Arrays.copyOfRange(data, pos, pos + paletteSize);
+        pos += paletteSize;
+        int bits = data[pos++];
+        if ((bits != 1 && bits != 2 && bits != 4 && bits != 8) || paletteSize > 1 << bits) {
+            throw new IOException("Compiled map has a bad palette");
+        }
+        if (data.length - pos < ((long) tiles.length * bits + 7) / 8) {
+            throw new IOException("Compiled map is cut short");
+        }
+        // the palette covers every value of an index (unused values give the last tile), so no index is checked
+        byte[] lookup = Arrays.copyOf(palette, 1 << bits);
+        Arrays.fill(lookup, paletteSize, lookup.length, palette[paletteSize - 1]);
+        int perByte = 8 / bits;
+        int mask = (1 << bits) - 1;
+        // the tiles of every possible packed byte, lowest first, as the bytes of a long
+        long[] expand = new long[256];
+        for (int b = 0; b < 256; b++) {
+            for (int k = 0; k < perByte; k++) {
+                expand[b] |= (long) (lookup[(b >>> (k * bits)) & mask] & 0xFF) << (8 * k);
+            }
+        }
+        // eight tiles at a time from bits packed bytes, written as one long
+        // (maps of up to four distinct tiles, the usual '#', '.', 'G' and 'E', take the unrolled loops)
+        int i = 0;
+        int whole = tiles.length & ~7;
+        if (bits == 1) {
+            while (i < whole) {
+                LONGS.set(tiles, i, expand[data[pos++] & 0xFF]);
+                i += 8;
+            }
+        } else if (bits == 2) {
+            while (i < whole) {
+                LONGS.set(tiles, i, expand[data[pos] & 0xFF] | expand[data[pos + 1] & 0xFF] << 32);
+                pos += 2;
+                i += 8;
+            }
+        }
+        while (i < whole) {
+            long eight = 0;
+            for (int k = 0; k < bits; k++) {
+                eight |= expand[data[pos++] & 0xFF] << (8 * perByte * k);
+            }
+            LONGS.set(tiles, i, eight);
+            i += 8;
+        }
+        while (i < tiles.length) {
+            int b = data[pos++] & 0xFF;
+            for (int k = 0; k < perByte && i < tiles.length; k++) {
+                tiles[i++] = lookup[b & mask];
+                b >>>= bits;
+            }
+        }
+    }
+
+    // varintLength(int) returns the bytes a run length takes as a varint
+    private static int varintLength(int run) {
+        int length = 1;
+        while (run >= 0x80) {
+            run >>>= 7;
+            length += 1;
+        }
+        return length;
+    }
+
+    // grow(int[], int) returns an array with room for one more position
+    private static int[] grow(int[] positions, int count) {
+        return count < positions.length ? positions : Arrays.copyOf(positions, count * 2);
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Random;
+
+// random number generator giving exactly the same numbers as java.util.Random for the same seed,
+// but whose state can be copied, so a copied game makes the same random choices as the original would
+public class CopyableRandom extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // state of the generator (not initialised here, Random's constructor sets it through setSeed())
+    private long state;
+
+    // Constructor - seeded from the clock
+    public CopyableRandom() {
+        this(System.nanoTime());
+    }
+
+    // Constructor
+    // @param : the seed
+    public CopyableRandom(long seed) {
+        super(seed);
+    }
+
+    // copy() returns a generator that will give the same numbers as this one from now on
+    // @return : the copy
+    public CopyableRandom copy() {
+        CopyableRandom copy = new CopyableRandom(0);
+        copy.state = state;
+        return copy;
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+}
@@ -0,0 +1,71 @@
+// terrain held in memory as one array per row, with rows shared between copies until they are written
+// copy() only copies the table of rows, so a copy costs one reference per row, and a row is
+// copied the first time either side changes it; used for game snapshots and forks
+public class CowTileStore implements TileStore {
+    // terrain rows, possibly shared with other copies
+    private final byte[][] rows;
+    // rows this store has copied for itself and may change in place, and whether there are any
+    private final boolean[] owned;
+    private boolean ownsRows;
+
+    // Constructor - splits an in-memory terrain into rows
+    // @param : terrain stored row by row, number of rows and number of columns
+    public CowTileStore(byte[] tiles, int height, int width) {
+        rows = new byte[height][];
+        owned = new boolean[height];
+        for (int y = 0; y < height; y++) {
+            rows[y] = java.util.Arrays.copyOfRange(tiles, y * width, (y + 1) * width);
+            owned[y] = true;
+        }
+        ownsRows = true;
+    }
+
+    // Copy constructor - shares every row with the other store
+    private CowTileStore(CowTileStore other) {
+        rows = other.rows.clone();
+        owned = new boolean[rows.length];
+    }
+
+    @Override
+    public byte get(int y, int x) {
+        return rows[y][x];
+    }
+
+    @Override
+    public void set(int y, int x, byte tile) {
+        if (!owned[y]) {
+            rows[y] = rows[y].clone();
+            owned[y] = true;
+            ownsRows = true;
+        }
+        rows[y][x] = tile;
+    }
+
+    // copy() returns a copy sharing all rows with this store, neither changes the shared rows from now on
+    // copying a store that has not been changed since it was made or last copied only reads it,
+    // so several threads may copy it at once
+    @Override
+    public TileStore copy() {
+        if (ownsRows) {
+            java.util.Arrays.fill(owned, false);
+            ownsRows = false;
+        }
+        return new CowTileStore(this);
+    }
+
+    // nothing to write back, the terrain only lives in memory
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // row(int) returns the terrain of one row, which must not be changed
+    // @param : the row
+    // @return : terrain of the row
+    public byte[] row(int y) {
+        return rows[y];
+    }
+}
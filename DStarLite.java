@@ -0,0 +1,277 @@
+import java.util.Arrays;
+
+// incremental shortest path planner (D* Lite, Koenig & Likhachev) over a Grid
+// the search runs backwards from the goal, so when the start moves or a few tiles change
+// only the part of the search affected by the change is repaired instead of searching again from scratch
+// used by the bot with unknown tiles treated as walkable: as looking reveals walls the plan is repaired
+// all state is kept in primitive arrays indexed by cell (y * width + x), reused while the grid size is unchanged
+public class DStarLite {
+    // cost used for unreachable cells, small enough that adding step costs cannot overflow
+    private static final int INF = Integer.MAX_VALUE / 4;
+    // neighbour offsets: south, east, north, west
+    private static final int[] DY = {1, 0, -1, 0};
+    private static final int[] DX = {0, 1, 0, -1};
+
+    // grid being planned over
+    private Grid grid;
+    private int width;
+    private int height;
+    // goal and current start cells
+    private int goal = -1;
+    private int start;
+    // key modifier, grows by the heuristic distance each time the start moves
+    private int km;
+    // cost estimates: g is the settled cost to the goal, rhs the one-step lookahead cost
+    private int[] g = new int[0];
+    private int[] rhs = new int[0];
+    // priority queue of inconsistent cells, keyed lexicographically by (k1, k2)
+    private int[] heap = new int[0];
+    private int[] heapPos = new int[0];
+    private int[] k1 = new int[0];
+    private int[] k2 = new int[0];
+    private int heapSize;
+    // number of cells expanded since the planner was created, shows how much work replanning saves
+    private long expansions;
+
+    // reset(Grid, int, int, int, int) starts planning a new route, discarding the previous search
+    // @param : grid to plan over, start y and x, goal y and x
+    public void reset(Grid grid, int sy, int sx, int gy, int gx) {
+        this.grid = grid;
+        height = grid.getHeight();
+        width = grid.getWidth();
+        int cells = height * width;
+        if (g.length < cells) {
+            g = new int[cells];
+            rhs = new int[cells];
+            heap = new int[cells];
+            heapPos = new int[cells];
+            k1 = new int[cells];
+            k2 = new int[cells];
+        }
+        Arrays.fill(g, 0, cells, INF);
+        Arrays.fill(rhs, 0, cells, INF);
+        Arrays.fill(heapPos, 0, cells, -1);
+        heapSize = 0;
+        km = 0;
+        start = sy * width + sx;
+        goal = gy * width + gx;
+        rhs[goal] = 0;
+        insert(goal);
+    }
+
+    // isPlanning(Grid, int, int) returns if the planner already holds a search for this grid and goal
+    // so it can be repaired instead of reset
+    // @param : grid and goal y and x
+    public boolean isPlanning(Grid grid, int gy, int gx) {
+        return this.grid == grid && height == grid.getHeight() && width == grid.getWidth()
+                && goal == gy * width + gx;
+    }
+
+    // moveStart(int, int) moves the start of the route, e.g. after the bot has walked part of the way
+    // @param : new start y and x
+    public void moveStart(int sy, int sx) {
+        int next = sy * width + sx;
+        km += heuristic(start, next);
+        start = next;
+    }
+
+    // tileChanged(int, int) tells the planner a tile has changed between walkable and wall
+    // @param : y and x of the changed tile
+    public void tileChanged(int y, int x) {
+        int cell = y * width + x;
+        update(cell);
+        for (int d = 0; d < 4; d++) {
+            int ny = y + DY[d];
+            int nx = x + DX[d];
+            if (inside(ny, nx)) {
+                update(ny * width + nx);
+            }
+        }
+    }
+
+    // compute() brings the search up to date for the current start
+    // @return : true if the goal can be reached from the start
+    public boolean compute() {
+        if (!Metrics.ENABLED) {
+            return repair();
+        }
+        Metrics.PathSearchEvent event = Metrics.beginPathSearch();
+        boolean reachable = repair();
+        Metrics.endPathSearch(event, "dstar", reachable ? g[start] : -1);
+        return reachable;
+    }
+
+    // repair() expands cells until the start's cost is settled, see compute()
+    private boolean repair() {
+        while (heapSize > 0 && (lessKey(heap[0], start) || rhs[start] != g[start])) {
+            int u = heap[0];
+            int oldK1 = k1[u];
+            int oldK2 = k2[u];
+            int newK1 = Math.min(g[u], rhs[u]) + heuristic(start, u) + km;
+            int newK2 = Math.min(g[u], rhs[u]);
+            expansions += 1;
+            if (oldK1 < newK1 || (oldK1 == newK1 && oldK2 < newK2)) {
+                // key out of date since the start moved, put it back with the right key
+                k1[u] = newK1;
+                k2[u] = newK2;
+                siftDown(0);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                remove(u);
+                updateNeighbours(u);
+            } else {
+                g[u] = INF;
+                update(u);
+                updateNeighbours(u);
+            }
+        }
+        return g[start] < INF;
+    }
+
+    // nextStep(int, int) returns the best neighbour to step to from a cell, following the search
+    // @param : y and x of the current cell
+    // @return : direction index (0 south, 1 east, 2 north, 3 west), or -1 if the goal cannot be reached
+    public int nextStep(int y, int x) {
+        int best = -1;
+        int bestCost = INF;
+        for (int d = 0; d < 4; d++) {
+            int ny = y + DY[d];
+            int nx = x + DX[d];
+            if (inside(ny, nx) && grid.isWalkable(ny, nx)) {
+                int cost = g[ny * width + nx];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = d;
+                }
+            }
+        }
+        return best;
+    }
+
+    // getExpansions() returns the number of cells expanded by this planner so far
+    public long getExpansions() {
+        return expansions;
+    }
+
+    // update(int) recalculates the lookahead cost of a cell and queues it if it is inconsistent
+    private void update(int u) {
+        if (u != goal) {
+            int best = INF;
+            int y = u / width;
+            int x = u - y * width;
+            if (grid.isWalkable(y, x)) {
+                for (int d = 0; d < 4; d++) {
+                    int ny = y + DY[d];
+                    int nx = x + DX[d];
+                    if (inside(ny, nx) && grid.isWalkable(ny, nx)) {
+                        best = Math.min(best, g[ny * width + nx] + 1);
+                    }
+                }
+            }
+            rhs[u] = best;
+        }
+        if (heapPos[u] >= 0) {
+            remove(u);
+        }
+        if (g[u] != rhs[u]) {
+            insert(u);
+        }
+    }
+
+    // updateNeighbours(int) updates the four neighbours of a cell
+    private void updateNeighbours(int u) {
+        int y = u / width;
+        int x = u - y * width;
+        for (int d = 0; d < 4; d++) {
+            int ny = y + DY[d];
+            int nx = x + DX[d];
+            if (inside(ny, nx)) {
+                update(ny * width + nx);
+            }
+        }
+    }
+
+    private boolean inside(int y, int x) {
+        return y >= 0 && x >= 0 && y < height && x < width;
+    }
+
+    // heuristic(int, int) returns the Manhattan distance between two cells
+    private int heuristic(int a, int b) {
+        int ay = a / width;
+        int by = b / width;
+        return Math.abs(ay - by) + Math.abs((a - ay * width) - (b - by * width));
+    }
+
+    // lessKey(int, int) returns if the queued key of a cell is smaller than the current key of another
+    private boolean lessKey(int u, int s) {
+        int sk2 = Math.min(g[s], rhs[s]);
+        int sk1 = sk2 + km;
+        return k1[u] < sk1 || (k1[u] == sk1 && k2[u] < sk2);
+    }
+
+    // heap helpers, ordered lexicographically by (k1, k2)
+    private boolean before(int a, int b) {
+        return k1[a] < k1[b] || (k1[a] == k1[b] && k2[a] < k2[b]);
+    }
+
+    private void insert(int u) {
+        k2[u] = Math.min(g[u], rhs[u]);
+        k1[u] = k2[u] + heuristic(start, u) + km;
+        heap[heapSize] = u;
+        heapPos[u] = heapSize;
+        heapSize += 1;
+        siftUp(heapSize - 1);
+    }
+
+    private void remove(int u) {
+        int i = heapPos[u];
+        heapPos[u] = -1;
+        heapSize -= 1;
+        if (i == heapSize) {
+            return;
+        }
+        int moved = heap[heapSize];
+        heap[i] = moved;
+        heapPos[moved] = i;
+        siftUp(i);
+        if (heapPos[moved] == i) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int i) {
+        int u = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(u, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapPos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = u;
+        heapPos[u] = i;
+    }
+
+    private void siftDown(int i) {
+        int u = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                child += 1;
+            }
+            if (!before(heap[child], u)) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = u;
+        heapPos[u] = i;
+    }
+}
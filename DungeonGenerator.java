@@ -0,0 +1,485 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// procedural dungeon maps for load testing, from small test maps to maps of gigabytes
+// the map is cut into square regions of about the region size, each generated on its own from a seed
+// derived from the map's seed and the region's position, so the same seed always gives the same map
+// whatever the number of threads; regions are generated in parallel over a fork-join pool
+// every region is walled in, and each pair of neighbouring regions agrees on a door in the wall between them
+// (derived from the seed and the pair's position); each region carves its way from its doors to its own
+// open ground and walls up anything unreachable, so the whole map is one connected area
+// gold and exits are shared out between the regions and placed on open ground, so any player can win
+// two kinds of region: ROOMS (rectangular rooms joined by corridors) and CAVES (cellular automaton caves)
+public class DungeonGenerator {
+    // kinds of dungeon
+    public enum Mode { ROOMS, CAVES }
+
+    // smallest side of a region, smaller maps are one region
+    private static final int MIN_REGION = 8;
+    // neighbour offsets of the four doors: north, south, west, east
+    private static final int NORTH = 0;
+    private static final int SOUTH = 1;
+    private static final int WEST = 2;
+    private static final int EAST = 3;
+
+    // kind of dungeon and seed of the map
+    private final Mode mode;
+    private final long seed;
+    // gold needed to win, gold and exits placed (0 to work them out from the map size)
+    private int goldRequired = 2;
+    private int goldCount;
+    private int exitCount;
+    // side of a region in tiles and number of threads generating regions
+    private int regionSize = 64;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // Constructor
+    // @param : kind of dungeon and seed of the map
+    public DungeonGenerator(Mode mode, long seed) {
+        this.mode = mode;
+        this.seed = seed;
+    }
+
+    // setGoldRequired(int) sets the gold needed to win the map, at least this much gold is placed
+    public void setGoldRequired(int goldRequired) {
+        if (goldRequired < 0) {
+            throw new IllegalArgumentException("Gold required cannot be negative");
+        }
+        this.goldRequired = goldRequired;
+    }
+
+    // setGoldCount(int) sets the gold placed, 0 for twice the gold required plus one per 16 regions
+    public void setGoldCount(int goldCount) {
+        this.goldCount = goldCount;
+    }
+
+    // setExitCount(int) sets the exits placed, 0 for one per 16 regions (at least one)
+    public void setExitCount(int exitCount) {
+        this.exitCount = exitCount;
+    }
+
+    // setRegionSize(int) sets the side of a region in tiles
+    public void setRegionSize(int regionSize) {
+        if (regionSize < MIN_REGION) {
+            throw new IllegalArgumentException("Regions must be at least " + MIN_REGION + " tiles wide");
+        }
+        this.regionSize = regionSize;
+    }
+
+    // setThreads(int) sets the number of threads generating regions
+    public void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    // generate(int, int) generates a map in memory
+    // @param : number of rows and columns
+    // @return : the map
+    // @throws : IllegalArgumentException if the map is too small or too large to hold in one array
+    public Map generate(int height, int width) {
+        Layout layout = new Layout(height, width);
+        if ((long) height * width > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Map too large to generate in memory: " + height + "x" + width);
+        }
+        byte[] tiles = new byte[height * width];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Regions(layout, 0, layout.rows, tiles, 0));
+        } finally {
+            pool.shutdown();
+        }
+        Map map = new Map(name(), goldRequired, height, width, new ArrayTileStore(tiles, width));
+        if (!map.getAnalysis().isWinnable()) {
+            throw new IllegalStateException("Generated map cannot be won: " + map.getAnalysis().getProblems());
+        }
+        return map;
+    }
+
+    // write(int, int, Path) generates a map straight into a file in the text map format, one band of regions at a
+    // time, so maps far larger than memory can be written
+    // @param : number of rows and columns and the file to write
+    // @throws : IOException if the file cannot be written
+    public void write(int height, int width, Path file) throws IOException {
+        Layout layout = new Layout(height, width);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(("name " + name() + "\nwin " + goldRequired + "\n")
+                    .getBytes(StandardCharsets.UTF_8)));
+            int bandRows = 0;
+            for (int ry = 0; ry < layout.rows; ry++) {
+                bandRows = Math.max(bandRows, layout.y(ry + 1) - layout.y(ry));
+            }
+            byte[] band = new byte[bandRows * width];
+            ByteBuffer out = ByteBuffer.allocate(Math.max(1 << 16, Math.min(1 << 22, bandRows * (width + 1))));
+            for (int ry = 0; ry < layout.rows; ry++) {
+                int y0 = layout.y(ry);
+                pool.invoke(new Regions(layout, ry, ry + 1, band, y0));
+                for (int y = 0; y < layout.y(ry + 1) - y0; y++) {
+                    int x = 0;
+                    while (x < width) {
+                        if (!out.hasRemaining()) {
+                            writeFully(channel, out.flip());
+                            out.clear();
+                        }
+                        int n = Math.min(width - x, out.remaining());
+                        out.put(band, y * width + x, n);
+                        x += n;
+                    }
+                    if (!out.hasRemaining()) {
+                        writeFully(channel, out.flip());
+                        out.clear();
+                    }
+                    out.put((byte) '\n');
+                }
+            }
+            writeFully(channel, out.flip());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // writeFully(FileChannel, ByteBuffer) writes everything left in a buffer
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    // name() returns the name given to generated maps
+    private String name() {
+        return "Generated " + mode.name().toLowerCase() + " " + seed;
+    }
+
+    // how a map is cut into regions, and how the gold and exits are shared out between them
+    private final class Layout {
+        private final int height;
+        private final int width;
+        // number of region rows and columns
+        private final int rows;
+        private final int cols;
+        private final long gold;
+        private final long exits;
+
+        Layout(int height, int width) {
+            if (height < 5 || width < 5) {
+                throw new IllegalArgumentException("Maps must be at least 5x5");
+            }
+            this.height = height;
+            this.width = width;
+            rows = Math.max(1, height / regionSize);
+            cols = Math.max(1, width / regionSize);
+            long regions = (long) rows * cols;
+            gold = Math.max(goldRequired, goldCount > 0 ? goldCount : 2L * goldRequired + regions / 16);
+            exits = exitCount > 0 ? exitCount : Math.max(1, regions / 16);
+        }
+
+        // y(int) returns the first row of a region row, x(int) the first column of a region column
+        int y(int ry) {
+            return (int) ((long) ry * height / rows);
+        }
+
+        int x(int rx) {
+            return (int) ((long) rx * width / cols);
+        }
+
+        // share(long, long) returns how many of a total go to a region, spread as evenly as possible
+        int share(long total, int ry, int rx) {
+            long regions = (long) rows * cols;
+            long index = (long) ry * cols + rx;
+            return (int) (total / regions + (index < total % regions ? 1 : 0));
+        }
+    }
+
+    // generates the regions of some region rows into an array of tiles, splitting the work between threads
+    private final class Regions extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Layout layout;
+        private final int ry0;
+        private final int ry1;
+        private final byte[] tiles;
+        // first map row held in the array
+        private final int offset;
+
+        Regions(Layout layout, int ry0, int ry1, byte[] tiles, int offset) {
+            this.layout = layout;
+            this.ry0 = ry0;
+            this.ry1 = ry1;
+            this.tiles = tiles;
+            this.offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            RecursiveAction[] tasks = new RecursiveAction[(ry1 - ry0) * layout.cols];
+            int i = 0;
+            for (int ry = ry0; ry < ry1; ry++) {
+                for (int rx = 0; rx < layout.cols; rx++) {
+                    int y = ry;
+                    int x = rx;
+                    tasks[i++] = new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            region(layout, y, x, tiles, offset);
+                        }
+                    };
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    // region(Layout, int, int, byte[], int) generates one region and copies it into the array of tiles
+    private void region(Layout layout, int ry, int rx, byte[] tiles, int offset) {
+        int y0 = layout.y(ry);
+        int x0 = layout.x(rx);
+        int h = layout.y(ry + 1) - y0;
+        int w = layout.x(rx + 1) - x0;
+        Random rand = new Random(mix(seed, ry, rx, 0));
+        byte[] cells = new byte[h * w];
+        Arrays.fill(cells, (byte) '#');
+        // doors agreed with each neighbour, -1 at the edge of the map
+        int[] doors = new int[4];
+        doors[NORTH] = ry > 0 ? door(ry - 1, rx, 1, w) : -1;
+        doors[SOUTH] = ry < layout.rows - 1 ? door(ry, rx, 1, w) : -1;
+        doors[WEST] = rx > 0 ? door(ry, rx - 1, 0, h) : -1;
+        doors[EAST] = rx < layout.cols - 1 ? door(ry, rx, 0, h) : -1;
+        int[] centre = mode == Mode.ROOMS ? rooms(cells, h, w, rand) : caves(cells, h, w, rand);
+        // carve from each door to the region's open ground
+        for (int side = 0; side < 4; side++) {
+            if (doors[side] < 0) {
+                continue;
+            }
+            int dy = side == NORTH ? 0 : side == SOUTH ? h - 1 : doors[side];
+            int dx = side == WEST ? 0 : side == EAST ? w - 1 : doors[side];
+            corridor(cells, w, dy, dx, centre[0], centre[1], rand.nextBoolean());
+        }
+        // wall up anything the centre cannot reach
+        fillUnreachable(cells, h, w, centre[0], centre[1]);
+        place(cells, h, w, (byte) 'G', layout.share(layout.gold, ry, rx), rand);
+        place(cells, h, w, (byte) 'E', layout.share(layout.exits, ry, rx), rand);
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(cells, y * w, tiles, (y0 + y - offset) * layout.width + x0, w);
+        }
+    }
+
+    // rooms(byte[], int, int, Random) carves rooms joined one to the next by corridors
+    // @return : centre (y,x) of the first room, which every door is joined to
+    private static int[] rooms(byte[] cells, int h, int w, Random rand) {
+        int count = Math.max(1, (h - 2) * (w - 2) / 300);
+        int[] previous = null;
+        int[] first = null;
+        for (int i = 0; i < count; i++) {
+            int rh = 3 + rand.nextInt(Math.max(1, Math.min(10, h - 5)));
+            int rw = 3 + rand.nextInt(Math.max(1, Math.min(14, w - 5)));
+            rh = Math.min(rh, h - 2);
+            rw = Math.min(rw, w - 2);
+            int top = 1 + rand.nextInt(h - 1 - rh);
+            int left = 1 + rand.nextInt(w - 1 - rw);
+            for (int y = top; y < top + rh; y++) {
+                Arrays.fill(cells, y * w + left, y * w + left + rw, (byte) '.');
+            }
+            int[] centre = {top + rh / 2, left + rw / 2};
+            if (previous != null) {
+                corridor(cells, w, previous[0], previous[1], centre[0], centre[1], rand.nextBoolean());
+            } else {
+                first = centre;
+            }
+            previous = centre;
+        }
+        return first;
+    }
+
+    // caves(byte[], int, int, Random) grows caves with a cellular automaton: random walls, then a few rounds of
+    // turning tiles with five or more walls around them into walls and the rest into open ground
+    // walls are counted with the sum of each column of three rows, so each tile costs a few additions a round
+    // @return : centre (y,x) of the region, which is always open
+    private static int[] caves(byte[] cells, int h, int w, Random rand) {
+        // 1 for a wall, 0 for open ground; the ring around the region stays wall
+        byte[] wall = new byte[h * w];
+        byte[] next = new byte[h * w];
+        Arrays.fill(wall, (byte) 1);
+        Arrays.fill(next, (byte) 1);
+        for (int y = 1; y < h - 1; y++) {
+            int bits = 0;
+            for (int x = 1; x < w - 1; x++) {
+                // one random int gives four tiles, each a wall when its byte is under 115 (45%)
+                if ((x & 3) == 1) {
+                    bits = rand.nextInt();
+                }
+                wall[y * w + x] = (byte) ((bits & 0xFF) < 115 ? 1 : 0);
+                bits >>>= 8;
+            }
+        }
+        int[] columns = new int[w];
+        for (int round = 0; round < 4; round++) {
+            for (int y = 1; y < h - 1; y++) {
+                int row = y * w;
+                for (int x = 0; x < w; x++) {
+                    columns[x] = wall[row - w + x] + wall[row + x] + wall[row + w + x];
+                }
+                for (int x = 1; x < w - 1; x++) {
+                    int walls = columns[x - 1] + columns[x] + columns[x + 1] - wall[row + x];
+                    next[row + x] = (byte) (walls >= 5 ? 1 : 0);
+                }
+            }
+            byte[] swap = wall;
+            wall = next;
+            next = swap;
+        }
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = wall[i] != 0 ? (byte) '#' : (byte) '.';
+        }
+        int[] centre = {h / 2, w / 2};
+        cells[centre[0] * w + centre[1]] = '.';
+        return centre;
+    }
+
+    // corridor(byte[], int, int, int, int, int, boolean) carves an L-shaped corridor between two tiles
+    // @param : the region, its width, both ends and whether to go along the row first
+    private static void corridor(byte[] cells, int w, int y0, int x0, int y1, int x1, boolean rowFirst) {
+        int cornerY = rowFirst ? y0 : y1;
+        int cornerX = rowFirst ? x1 : x0;
+        carveLine(cells, w, y0, x0, cornerY, cornerX);
+        carveLine(cells, w, cornerY, cornerX, y1, x1);
+    }
+
+    // carveLine(byte[], int, int, int, int, int) opens every wall on a straight line, leaving gold and exits
+    private static void carveLine(byte[] cells, int w, int y0, int x0, int y1, int x1) {
+        int dy = Integer.signum(y1 - y0);
+        int dx = Integer.signum(x1 - x0);
+        for (int y = y0, x = x0; ; y += dy, x += dx) {
+            if (cells[y * w + x] == '#') {
+                cells[y * w + x] = '.';
+            }
+            if (y == y1 && x == x1) {
+                return;
+            }
+        }
+    }
+
+    // fillUnreachable(byte[], int, int, int, int) turns open tiles not connected to a tile into walls
+    private static void fillUnreachable(byte[] cells, int h, int w, int sy, int sx) {
+        boolean[] reached = new boolean[h * w];
+        int[] queue = new int[h * w];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = sy * w + sx;
+        reached[sy * w + sx] = true;
+        while (head < tail) {
+            int cell = queue[head++];
+            int y = cell / w;
+            int x = cell % w;
+            if (y > 0 && !reached[cell - w] && cells[cell - w] != '#') {
+                reached[cell - w] = true;
+                queue[tail++] = cell - w;
+            }
+            if (y < h - 1 && !reached[cell + w] && cells[cell + w] != '#') {
+                reached[cell + w] = true;
+                queue[tail++] = cell + w;
+            }
+            if (x > 0 && !reached[cell - 1] && cells[cell - 1] != '#') {
+                reached[cell - 1] = true;
+                queue[tail++] = cell - 1;
+            }
+            if (x < w - 1 && !reached[cell + 1] && cells[cell + 1] != '#') {
+                reached[cell + 1] = true;
+                queue[tail++] = cell + 1;
+            }
+        }
+        for (int i = 0; i < cells.length; i++) {
+            if (!reached[i]) {
+                cells[i] = '#';
+            }
+        }
+    }
+
+    // place(byte[], int, int, byte, int, Random) puts a number of gold or exit tiles on open ground inside the
+    // region's wall, trying random tiles first, then the first open tiles left, then walls next to open ground
+    private static void place(byte[] cells, int h, int w, byte tile, int count, Random rand) {
+        int placed = 0;
+        for (int tries = 0; placed < count && tries < count * 32; tries++) {
+            int cell = (1 + rand.nextInt(h - 2)) * w + 1 + rand.nextInt(w - 2);
+            if (cells[cell] == '.') {
+                cells[cell] = tile;
+                placed += 1;
+            }
+        }
+        for (int y = 1; y < h - 1 && placed < count; y++) {
+            for (int x = 1; x < w - 1 && placed < count; x++) {
+                if (cells[y * w + x] == '.') {
+                    cells[y * w + x] = tile;
+                    placed += 1;
+                }
+            }
+        }
+        // not enough open ground (a small cave): open walls next to open ground, which keeps it one area
+        while (placed < count) {
+            int before = placed;
+            for (int y = 1; y < h - 1 && placed < count; y++) {
+                for (int x = 1; x < w - 1 && placed < count; x++) {
+                    int cell = y * w + x;
+                    if (cells[cell] == '#' && (cells[cell - w] != '#' || cells[cell + w] != '#'
+                            || cells[cell - 1] != '#' || cells[cell + 1] != '#')) {
+                        cells[cell] = tile;
+                        placed += 1;
+                    }
+                }
+            }
+            if (placed == before) {
+                throw new IllegalStateException("Region too small for its gold and exits, use larger regions");
+            }
+        }
+    }
+
+    // door(int, int, int, int) returns where the door between a region and its neighbour south (axis 1) or
+    // east (axis 0) is along their shared wall, the same whichever of the two asks
+    private int door(int ry, int rx, int axis, int length) {
+        return 1 + (int) Math.floorMod(mix(seed, ry, rx, axis + 1), (long) (length - 2));
+    }
+
+    // mix(long, int, int, int) derives a well-spread seed from the map seed and a position
+    private static long mix(long seed, int a, int b, int c) {
+        long z = seed + 0x9E3779B97F4A7C15L * (1 + a) + 0xC2B2AE3D27D4EB4FL * (1 + b) + 0x165667B19E3779F9L * (1 + c);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // main method - generates a map file
+    // arguments: [rooms|caves] [rows] [columns] [seed] [gold required] [output file] [threads] [region size],
+    // files ending in ".dodm" are written as compiled maps (generated in memory first), others as text
+    public static void main(String[] args) throws IOException {
+        Mode mode = args.length > 0 && args[0].equals("caves") ? Mode.CAVES : Mode.ROOMS;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1L;
+        DungeonGenerator generator = new DungeonGenerator(mode, seed);
+        generator.setGoldRequired(args.length > 4 ? Integer.parseInt(args[4]) : 2);
+        String output = args.length > 5 ? args[5] : "generated.txt";
+        if (args.length > 6) {
+            generator.setThreads(Integer.parseInt(args[6]));
+        }
+        if (args.length > 7) {
+            generator.setRegionSize(Integer.parseInt(args[7]));
+        }
+        long start = System.nanoTime();
+        if (output.endsWith(".dodm")) {
+            CompiledMap.write(generator.generate(height, width), Path.of(output));
+        } else {
+            generator.write(height, width, Path.of(output));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s %dx%d written to %s in %.3fs%n", generator.name(), height, width, output, seconds);
+    }
+}
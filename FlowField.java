@@ -0,0 +1,235 @@
+import java.util.Arrays;
+
+// distance field from every tile of a map to the nearest tile of one kind (e.g. all gold or all exits)
+// built once with a breadth-first search started from every target tile at the same time,
+// then any number of agents can read their next step towards the nearest target in constant time
+// the field listens to the map: when a target tile is removed (gold picked up) only the tiles that were
+// closest to it are searched again, and a new target only spreads out as far as it is the closest
+// a change between wall and floor marks the whole field to be rebuilt on the next query
+public class FlowField implements MapListener {
+    // distance of tiles that cannot reach any target
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    // neighbour offsets and direction characters: south, east, north, west
+    private static final int[] DY = {1, 0, -1, 0};
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final char[] DIRECTION = {'s', 'e', 'n', 'w'};
+
+    // map the field is built on
+    private final Map map;
+    // kind of tile the field leads to
+    private final char target;
+    private final int height;
+    private final int width;
+    // steps from each tile to the nearest target
+    private final int[] distance;
+    // cell number of the target each tile's distance comes from
+    private final int[] source;
+    // working queue of cells and a second list of seed cells for repairs
+    private int[] queue;
+    private int[] seeds;
+    // true when the walls have changed and the field must be rebuilt
+    private boolean stale = true;
+    // number of cells whose distance was recalculated since the field was created
+    private long updatedCells;
+
+    // Constructor - builds the field and starts listening to the map
+    // @param : the map and the kind of tile to lead to (e.g. 'G' or 'E')
+    // @throws : IllegalArgumentException if the map is too large to hold a field for
+    public FlowField(Map map, char target) {
+        long cells = (long) map.getHeight() * map.getWidth();
+        if (cells > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Map too large for a flow field: " + cells + " tiles");
+        }
+        this.map = map;
+        this.target = target;
+        height = map.getHeight();
+        width = map.getWidth();
+        distance = new int[(int) cells];
+        source = new int[(int) cells];
+        queue = new int[(int) cells];
+        seeds = new int[64];
+        map.addListener(this);
+    }
+
+    // distance(y, x) returns the number of steps from a tile to the nearest target
+    // @param : y and x coordinates
+    // @return : steps, or UNREACHABLE if no target can be reached
+    public int distance(int y, int x) {
+        refresh();
+        return distance[y * width + x];
+    }
+
+    // nextStep(y, x) returns the direction that leads one step closer to the nearest target
+    // @param : y and x coordinates
+    // @return : 'n', 'e', 's' or 'w', or 0 if the tile is a target or no target can be reached
+    public char nextStep(int y, int x) {
+        refresh();
+        int here = distance[y * width + x];
+        if (here == 0 || here == UNREACHABLE) {
+            return 0;
+        }
+        for (int d = 0; d < 4; d++) {
+            int ny = y + DY[d];
+            int nx = x + DX[d];
+            if (inside(ny, nx) && distance[ny * width + nx] == here - 1) {
+                return DIRECTION[d];
+            }
+        }
+        return 0;
+    }
+
+    // getUpdatedCells() returns the number of tile distances recalculated so far, for comparing costs
+    public long getUpdatedCells() {
+        return updatedCells;
+    }
+
+    // detach() stops the field listening to the map
+    public void detach() {
+        map.removeListener(this);
+    }
+
+    // terrainChanged(...) keeps the field up to date with the map
+    @Override
+    public void terrainChanged(int y, int x, char oldTile, char newTile) {
+        if (stale) {
+            return;
+        }
+        if ((oldTile == '#') != (newTile == '#')) {
+            stale = true;
+            return;
+        }
+        int cell = y * width + x;
+        if (oldTile == target && newTile != target) {
+            removeSource(cell);
+        } else if (newTile == target && oldTile != target) {
+            addSource(cell);
+        }
+    }
+
+    // refresh() rebuilds the field if the walls have changed
+    private void refresh() {
+        if (!stale) {
+            return;
+        }
+        Arrays.fill(distance, UNREACHABLE);
+        int tail = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (map.getTerrain(y, x) == target) {
+                    int cell = y * width + x;
+                    distance[cell] = 0;
+                    source[cell] = cell;
+                    queue[tail++] = cell;
+                }
+            }
+        }
+        spread(0, tail, 0);
+        stale = false;
+    }
+
+    // spread(int, int, int) runs the breadth-first search over the queue, merging in sorted seed cells
+    // cells are only improved, never made worse, so the same search serves building and repairing
+    // @param : queue head and tail, number of seeds (already sorted by distance)
+    private void spread(int head, int tail, int seedCount) {
+        int s = 0;
+        while (head < tail || s < seedCount) {
+            int cell;
+            // take whichever of the next seed and the next queued cell is closer, keeping distances in order
+            if (s < seedCount && (head == tail || distance[seeds[s]] <= distance[queue[head]])) {
+                cell = seeds[s++];
+            } else {
+                cell = queue[head++];
+            }
+            int y = cell / width;
+            int x = cell - y * width;
+            int next = distance[cell] + 1;
+            for (int d = 0; d < 4; d++) {
+                int ny = y + DY[d];
+                int nx = x + DX[d];
+                if (!inside(ny, nx)) {
+                    continue;
+                }
+                int n = ny * width + nx;
+                if (distance[n] > next && map.getTerrain(ny, nx) != '#') {
+                    distance[n] = next;
+                    source[n] = source[cell];
+                    queue[tail++] = n;
+                    updatedCells += 1;
+                }
+            }
+        }
+    }
+
+    // addSource(int) adds a target, spreading out only while it is closer than the existing targets
+    private void addSource(int cell) {
+        distance[cell] = 0;
+        source[cell] = cell;
+        queue[0] = cell;
+        spread(0, 1, 0);
+    }
+
+    // removeSource(int) removes a target and recalculates the tiles that were closest to it
+    private void removeSource(int removed) {
+        // collect the region whose nearest target was the removed one, it is connected through its search parents
+        int tail = 0;
+        queue[tail++] = removed;
+        distance[removed] = UNREACHABLE;
+        for (int head = 0; head < tail; head++) {
+            int cell = queue[head];
+            int y = cell / width;
+            int x = cell - y * width;
+            for (int d = 0; d < 4; d++) {
+                int ny = y + DY[d];
+                int nx = x + DX[d];
+                if (!inside(ny, nx)) {
+                    continue;
+                }
+                int n = ny * width + nx;
+                if (source[n] == removed && distance[n] != UNREACHABLE) {
+                    distance[n] = UNREACHABLE;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        // the cells around the region that still reach another target seed the repair
+        int seedCount = 0;
+        for (int i = 0; i < tail; i++) {
+            int cell = queue[i];
+            source[cell] = -1;
+            int y = cell / width;
+            int x = cell - y * width;
+            for (int d = 0; d < 4; d++) {
+                int ny = y + DY[d];
+                int nx = x + DX[d];
+                if (!inside(ny, nx)) {
+                    continue;
+                }
+                int n = ny * width + nx;
+                if (distance[n] != UNREACHABLE && source[n] != removed) {
+                    if (seedCount == seeds.length) {
+                        seeds = Arrays.copyOf(seeds, seeds.length * 2);
+                    }
+                    seeds[seedCount++] = n;
+                }
+            }
+        }
+        sortSeeds(seedCount);
+        spread(0, 0, seedCount);
+    }
+
+    // sortSeeds(int) sorts the seed cells by distance (a seed may appear twice, which does no harm)
+    private void sortSeeds(int count) {
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyed[i] = ((long) distance[seeds[i]] << 32) | seeds[i];
+        }
+        Arrays.sort(keyed);
+        for (int i = 0; i < count; i++) {
+            seeds[i] = (int) keyed[i];
+        }
+    }
+
+    private boolean inside(int y, int x) {
+        return y >= 0 && x >= 0 && y < height && x < width;
+    }
+}
@@ -0,0 +1,45 @@
+// scripted strategy for a headless human player that follows the game's shared flow fields
+// walks to the nearest gold until it has enough, then to the nearest exit, picking up and quitting on arrival
+// each decision is a constant-time lookup, however many players share the fields
+public class FlowFieldStrategy implements Strategy {
+    // the game whose flow fields are followed
+    private final GameLogic game;
+    // the player controlled by this strategy
+    private final Player self;
+
+    // Constructor
+    // @param : the game and the controlled player
+    public FlowFieldStrategy(GameLogic game, Player self) {
+        this.game = game;
+        this.self = self;
+    }
+
+    // nextCommand() returns the command that brings the player closest to winning
+    // @return : command to process
+    @Override
+    public String nextCommand() {
+        boolean enoughGold = self.getGold() >= game.getMap().getGoldRequired();
+        if (!enoughGold && self.getCurrentTile() == 'G') {
+            return "pickup";
+        }
+        if (enoughGold && self.getCurrentTile() == 'E') {
+            return "quit";
+        }
+        int[] pos = self.getCoord();
+        FlowField field = enoughGold ? game.getExitField() : game.getGoldField();
+        char step = field.nextStep(pos[0], pos[1]);
+        switch (step) {
+            case 'n': return "n";
+            case 'e': return "e";
+            case 's': return "s";
+            case 'w': return "w";
+            // nothing reachable, look around instead of walking into a wall
+            default: return "look";
+        }
+    }
+
+    // observe(String, String) - responses are not needed by this strategy
+    @Override
+    public void observe(String command, String response) {
+    }
+}
@@ -0,0 +1,223 @@
+// set of the cells (y * width + x) players and bots may spawn on, with O(1) add, remove and pick by position
+// cells are kept packed in a list, removing a cell moves the last cell of the list into its place; the position of
+// each cell is found through an open-addressing hash table, so the index takes memory for the free cells only
+// copies share their arrays until either side changes, so copying the index of a template map costs nothing;
+// changes to shared arrays are logged and only applied, on arrays of the set's own, when the set is next read,
+// so copies that change but never pick a cell (e.g. the forks of a search) never copy the arrays
+public class FreeCellIndex {
+    // marks an empty slot in the key table
+    private static final int EMPTY = -1;
+    // the cells in the set, packed at the front
+    private int[] cells;
+    // number of cells in the set
+    private int size;
+    // hash table from cell to its position in the list: the cells, EMPTY for a free slot, and their positions
+    private int[] keys;
+    private int[] positions;
+    // true while the arrays may be shared with a copy
+    private boolean shared;
+    // changes not yet applied to the shared arrays, in order: cell << 1 | 1 for an add, cell << 1 for a remove
+    private long[] pending;
+    private int pendingCount;
+
+    // Constructor - creates a set of cells
+    // @param : the cells, each once, in the order they are to be listed
+    public FreeCellIndex(int[] cells) {
+        this.cells = cells.length == 0 ? new int[16] : cells;
+        int capacity = 16;
+        // keep the table at most half full so probe sequences stay short
+        while (capacity < cells.length * 2) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        positions = new int[capacity];
+        java.util.Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < cells.length; i++) {
+            insert(cells[i], i);
+        }
+        size = cells.length;
+    }
+
+    // Copy constructor, used by copy()
+    private FreeCellIndex(FreeCellIndex other) {
+        cells = other.cells;
+        size = other.size;
+        keys = other.keys;
+        positions = other.positions;
+        shared = true;
+        pending = other.pending == null ? null : other.pending.clone();
+        pendingCount = other.pendingCount;
+    }
+
+    // copy() returns a set with the same cells, sharing the arrays until either set changes
+    // @return : the copy
+    public FreeCellIndex copy() {
+        shared = true;
+        return new FreeCellIndex(this);
+    }
+
+    // size() returns the number of cells in the set
+    public int size() {
+        settle();
+        return size;
+    }
+
+    // get(int) returns the cell at a position of the list
+    // @param : position, from 0 to size() - 1
+    public int get(int i) {
+        settle();
+        return cells[i];
+    }
+
+    // position(int) returns the position of a cell in the list
+    // @return : the position, or -1 if the cell is not in the set
+    public int position(int cell) {
+        settle();
+        int i = find(cell);
+        return i < 0 ? -1 : positions[i];
+    }
+
+    // contains(int) returns if a cell is in the set
+    public boolean contains(int cell) {
+        settle();
+        return find(cell) >= 0;
+    }
+
+    // add(int) adds a cell to the set if it is not in it already
+    public void add(int cell) {
+        if (shared) {
+            defer((long) cell << 1 | 1);
+            return;
+        }
+        if (find(cell) >= 0) {
+            return;
+        }
+        if (size == cells.length) {
+            cells = java.util.Arrays.copyOf(cells, size * 2);
+        }
+        cells[size] = cell;
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        insert(cell, size);
+        size += 1;
+    }
+
+    // remove(int) takes a cell out of the set if it is in it, the last cell of the list takes its place
+    public void remove(int cell) {
+        if (shared) {
+            defer((long) cell << 1);
+            return;
+        }
+        int i = find(cell);
+        if (i < 0) {
+            return;
+        }
+        int position = positions[i];
+        delete(i);
+        size -= 1;
+        if (position != size) {
+            int last = cells[size];
+            cells[position] = last;
+            positions[find(last)] = position;
+        }
+    }
+
+    // defer(long) logs a change to shared arrays, applying the log once it outgrows an eighth of the set
+    // so the time spent applying it stays proportional to the changes
+    private void defer(long change) {
+        if (pending == null) {
+            pending = new long[8];
+        } else if (pendingCount == pending.length) {
+            pending = java.util.Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = change;
+        if (pendingCount > Math.max(64, size / 8)) {
+            settle();
+        }
+    }
+
+    // settle() gives this set its own arrays, if it has logged changes to shared ones, and applies the changes
+    private void settle() {
+        if (pendingCount == 0) {
+            return;
+        }
+        cells = cells.clone();
+        keys = keys.clone();
+        positions = positions.clone();
+        shared = false;
+        long[] changes = pending;
+        int count = pendingCount;
+        pending = null;
+        pendingCount = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = (int) (changes[i] >>> 1);
+            if ((changes[i] & 1) != 0) {
+                add(cell);
+            } else {
+                remove(cell);
+            }
+        }
+    }
+
+    // find(int) returns the slot of a cell in the table, or -1 if it is not in the set
+    private int find(int cell) {
+        int mask = keys.length - 1;
+        for (int i = slot(cell, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == cell) {
+                return i;
+            }
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    // insert(int, int) puts a cell that is not in the table into it with its position
+    private void insert(int cell, int position) {
+        int mask = keys.length - 1;
+        int i = slot(cell, mask);
+        while (keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = cell;
+        positions[i] = position;
+    }
+
+    // delete(int) empties a slot of the table
+    private void delete(int i) {
+        int mask = keys.length - 1;
+        // shift following entries of the same probe sequence back so lookups never stop early
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            // move the entry if its home slot is not between the gap and its current slot
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                positions[gap] = positions[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    // slot(int, int) returns the home slot of a cell in the table
+    private static int slot(int cell, int mask) {
+        long h = cell * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // grow() doubles the table and re-inserts every entry
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldPositions = positions;
+        keys = new int[oldKeys.length * 2];
+        positions = new int[oldKeys.length * 2];
+        java.util.Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldPositions[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+// number of cells players and bots may spawn on in each chunk of a chunked map, for picking one of them by rank
+// a chunked map is too large to list its free cells, so only a count per chunk is kept, in a Fenwick tree: a count
+// changes and the chunk holding the cell of a rank is found in O(log chunks), then the cell is found by reading
+// that chunk, which spawning on it loads anyway
+// cells are ranked chunk by chunk, chunks row by row, and row by row inside a chunk
+// built by one pass over the map, chunk by chunk so each chunk is loaded from disk once
+public class FreeChunkIndex {
+    // terrain of the map
+    private final TileStore tiles;
+    // size of the map
+    private final int height;
+    private final int width;
+    // side length of a chunk in tiles, and chunks in a row of chunks
+    private final int chunkSize;
+    private final int chunkColumns;
+    // Fenwick tree of the free cells of each chunk, chunk i at i + 1
+    private final long[] tree;
+    // number of free cells on the map
+    private long size;
+
+    // Constructor - counts the free cells of every chunk of a map
+    // @param : terrain of the map, its size and the side length of a chunk in tiles
+    // @throws : IllegalStateException if the map has too many chunks to count them in one array
+    public FreeChunkIndex(TileStore tiles, int height, int width, int chunkSize) {
+        this.tiles = tiles;
+        this.height = height;
+        this.width = width;
+        this.chunkSize = chunkSize;
+        long rows = (height + (long) chunkSize - 1) / chunkSize;
+        long columns = (width + (long) chunkSize - 1) / chunkSize;
+        if (rows * columns >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Map has too many chunks to count its free tiles: " + rows * columns);
+        }
+        chunkColumns = (int) columns;
+        int chunks = (int) (rows * columns);
+        tree = new long[chunks + 1];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            tree[chunk + 1] = countBefore(chunk, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            size += tree[chunk + 1];
+        }
+        // turn the counts into a Fenwick tree in place
+        for (int i = 1; i <= chunks; i++) {
+            int parent = i + (i & -i);
+            if (parent <= chunks) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    // size() returns the number of free cells on the map
+    public long size() {
+        return size;
+    }
+
+    // add(int, int) counts a cell inside the border whose terrain has just become one players can spawn on
+    public void add(int y, int x) {
+        update(chunk(y, x), 1);
+        size += 1;
+    }
+
+    // remove(int, int) stops counting a cell inside the border whose terrain players could spawn on until now
+    public void remove(int y, int x) {
+        update(chunk(y, x), -1);
+        size -= 1;
+    }
+
+    // get(long) returns the free cell of a rank
+    // @param : rank, from 0 to size() - 1
+    // @return : coordinates (y,x) of the cell
+    public int[] get(long rank) {
+        // walk down the tree to the chunk whose cells hold the rank
+        int chunk = 0;
+        long remaining = rank;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = chunk + step;
+            if (next < tree.length && tree[next] <= remaining) {
+                chunk = next;
+                remaining -= tree[next];
+            }
+        }
+        int y0 = chunk / chunkColumns * chunkSize;
+        int x0 = chunk % chunkColumns * chunkSize;
+        for (int y = Math.max(1, y0); y < Math.min(y0 + chunkSize, height - 1); y++) {
+            for (int x = Math.max(1, x0); x < Math.min(x0 + chunkSize, width - 1); x++) {
+                if (Map.isSpawnTerrain(tiles.get(y, x)) && remaining-- == 0) {
+                    return new int[]{y, x};
+                }
+            }
+        }
+        throw new IllegalStateException("Free tile counts out of date in chunk " + chunk);
+    }
+
+    // rank(int, int) returns the rank of a cell among the free cells
+    // @return : the rank, or -1 if the cell is not free
+    public long rank(int y, int x) {
+        if (y < 1 || x < 1 || y >= height - 1 || x >= width - 1 || !Map.isSpawnTerrain(tiles.get(y, x))) {
+            return -1;
+        }
+        int chunk = chunk(y, x);
+        long rank = 0;
+        for (int i = chunk; i > 0; i -= i & -i) {
+            rank += tree[i];
+        }
+        return rank + countBefore(chunk, y, x);
+    }
+
+    // chunk(int, int) returns the number of the chunk holding a cell
+    private int chunk(int y, int x) {
+        return y / chunkSize * chunkColumns + x / chunkSize;
+    }
+
+    // countBefore(int, int, int) returns the free cells inside the border of a chunk that come before a cell
+    // row by row, all of them for a cell past the chunk
+    private long countBefore(int chunk, int endY, int endX) {
+        int y0 = chunk / chunkColumns * chunkSize;
+        int x0 = chunk % chunkColumns * chunkSize;
+        long count = 0;
+        for (int y = Math.max(1, y0); y < Math.min(y0 + chunkSize, height - 1) && y <= endY; y++) {
+            for (int x = Math.max(1, x0); x < Math.min(x0 + chunkSize, width - 1); x++) {
+                if (y == endY && x >= endX) {
+                    return count;
+                }
+                if (Map.isSpawnTerrain(tiles.get(y, x))) {
+                    count += 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    // update(int, long) adds to the count of a chunk
+    private void update(int chunk, long delta) {
+        for (int i = chunk + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+}
@@ -1,22 +1,70 @@
 /*
  * Contains the main logic part of the game, as it processes.
  */
-import java.util.Objects;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Scanner;
 
 public class GameLogic {
 
+    // opcodes of the commands, used to parse a command once and then dispatch on a byte
+    public static final byte OP_INVALID = 0;
+    public static final byte OP_HELLO = 1;
+    public static final byte OP_GOLD = 2;
+    public static final byte OP_LOOK = 3;
+    public static final byte OP_PICKUP = 4;
+    public static final byte OP_QUIT = 5;
+    public static final byte OP_NORTH = 6;
+    public static final byte OP_SOUTH = 7;
+    public static final byte OP_EAST = 8;
+    public static final byte OP_WEST = 9;
+    public static final byte OP_LOOKDELTA = 10;
+    // names of the commands, indexed by opcode
+    private static final String[] COMMANDS = {"", "hello", "gold", "look", "pickup", "quit", "n", "s", "e", "w",
+            "lookdelta"};
+
     /* Reference to the map being used */
     private Map map;
-    // reference to the human player
-    private HumanPlayer player;
-    // reference to the bot player
-    private BotPlayer bot;
+    // human players still in the game
+    private final ArrayList<HumanPlayer> players = new ArrayList<>();
+    // bot players still in the game
+    private final ArrayList<BotPlayer> bots = new ArrayList<>();
+    // players and bots in the order they joined, all humans then all bots
+    private final ArrayList<Player> turnOrder = new ArrayList<>();
+    // who acts next: by the tick of each one's next action, then by the order they joined, so with the same
+    // action interval everyone takes turns round-robin
+    private TickScheduler<Player> schedule = new TickScheduler<>();
+    // whether the actions of a tick are collected and resolved together, see setSimultaneous()
+    private boolean simultaneous;
+    // actions collected for the tick being played, in the order they were chosen
+    private final ArrayList<Action> actions = new ArrayList<>();
+    // responses of resolved actions of human players not taken yet, see takeResponse()
+    private final IdentityHashMap<Player, String> responses = new IdentityHashMap<>();
+    // the last human player to be caught, for the lose message
+    private HumanPlayer lastCaught;
     // current state of game
     private Boolean running = true;
-    // current player turn
-    private Boolean playerTurn = true;
+    // seed of the game and the random number generator seeded with it, used for spawning and by the bots
+    private long seed;
+    private CopyableRandom rand;
+    // how the game ended, UNFINISHED while it is still running
+    private GameResult result = GameResult.UNFINISHED;
+    // told about every command processed, e.g. to journal the game for replay, null if nothing is listening
+    private CommandListener commandListener;
+    // distance fields to all gold and all exits, shared by every agent, created when first needed
+    private FlowField goldField;
+    private FlowField exitField;
+    // tiles seen from the player to the edge of the look mini-map, and the viewport reused to build look responses
+    private int lookRadius = 2;
+    private Viewport lookView;
+    // search used to choose the bots' commands instead of their own rules, null for rule-based bots
+    private MctsPlanner botSearch;
+    // windows last sent to each player by lookdelta, created on a player's first lookdelta
+    private final IdentityHashMap<Player, ViewTracker> viewTrackers = new IdentityHashMap<>();
 
     // Constructor
     public GameLogic() {
@@ -30,19 +78,142 @@ public class GameLogic {
         if(map.getMapName() == null) {
             map = new Map();
             }
-        // spawn the human player on the map
-        int[] sp = generateSpawn();
-        player = new HumanPlayer(0, sp[0], sp[1], map.getTile(sp[0], sp[1]), 'P');
-        map.setMap(sp[0], sp[1], player.getIndicator());
-        // spawn the bot player on the map
-        sp = generateSpawn();
-        bot = new BotPlayer(0, sp[0], sp[1], map.getTile(sp[0], sp[1]), 'B');
-        map.setMap(sp[0], sp[1], bot.getIndicator());
+        seed = System.nanoTime();
+        rand = new CopyableRandom(seed);
+        spawnPlayers(1, 1);
 
         // next line is for testing purposes - prints out whole map
         //System.out.println(map.getMapAll());
     }
 
+    // Headless constructor - no console input, used for simulations and servers
+    // @param : the map to play on (owned by this game from now on) and the seed for spawning
+    public GameLogic(Map map, long seed) {
+        this(map, seed, 1, 1);
+    }
+
+    // Headless constructor for games with several human players and bots
+    // @param : the map to play on, the seed for spawning, number of human players and number of bots
+    public GameLogic(Map map, long seed, int humans, int botCount) {
+        this.map = map;
+        this.seed = seed;
+        rand = new CopyableRandom(seed);
+        spawnPlayers(humans, botCount);
+    }
+
+    // Copy constructor, used by fork()
+    private GameLogic(GameLogic other) {
+        copyFrom(other);
+    }
+
+    // fork() returns an independent copy of the game in its current state, without either changing the other
+    // the copy makes the same random choices, but its bots start new route plans where the original's keep their
+    // repaired ones, so routes between equally short paths may differ and the two games can drift apart
+    // the map is copied on write, so a fork costs about the players and the rows changed after it
+    // listeners and lookdelta windows are not carried over
+    // @return : the copy
+    public GameLogic fork() {
+        return new GameLogic(this);
+    }
+
+    // snapshot() saves the state of the game so it can be restored later, any number of times
+    // @return : the saved state
+    public Snapshot snapshot() {
+        return new Snapshot(fork());
+    }
+
+    // restore(Snapshot) puts the game back into a saved state, keeping its command listener
+    // @param : the saved state, from this game or any other
+    public void restore(Snapshot snapshot) {
+        copyFrom(snapshot.state);
+    }
+
+    // copyFrom(GameLogic) replaces the state of this game with a copy of another game's state
+    private void copyFrom(GameLogic other) {
+        map = other.map.fork();
+        players.clear();
+        bots.clear();
+        turnOrder.clear();
+        IdentityHashMap<Player, Player> copies = new IdentityHashMap<>();
+        for (Player player : other.turnOrder) {
+            if (player instanceof BotPlayer) {
+                BotPlayer bot = new BotPlayer((BotPlayer) player);
+                bots.add(bot);
+                turnOrder.add(bot);
+                copies.put(player, bot);
+            } else {
+                HumanPlayer human = new HumanPlayer((HumanPlayer) player);
+                players.add(human);
+                turnOrder.add(human);
+                copies.put(player, human);
+            }
+        }
+        // the last player caught is no longer in the game
+        lastCaught = other.lastCaught == null ? null : new HumanPlayer(other.lastCaught);
+        schedule = other.schedule.copy(copies::get);
+        simultaneous = other.simultaneous;
+        actions.clear();
+        for (Action action : other.actions) {
+            actions.add(new Action(copies.get(action.player), action.op, action.botCommand));
+        }
+        responses.clear();
+        for (java.util.Map.Entry<Player, String> response : other.responses.entrySet()) {
+            Player player = copies.get(response.getKey());
+            if (player != null) {
+                responses.put(player, response.getValue());
+            }
+        }
+        running = other.running;
+        seed = other.seed;
+        rand = other.rand.copy();
+        result = other.result;
+        lookRadius = other.lookRadius;
+        lookView = null;
+        goldField = null;
+        exitField = null;
+        viewTrackers.clear();
+    }
+
+    // saved state of a game, see snapshot() and restore()
+    public static final class Snapshot {
+        // copy of the game, never played
+        private final GameLogic state;
+
+        private Snapshot(GameLogic state) {
+            this.state = state;
+        }
+
+        // fork() returns a new game starting from the saved state
+        // @return : the new game
+        public GameLogic fork() {
+            return state.fork();
+        }
+    }
+
+    // spawnPlayers(int, int) spawns the human players then the bot players on the map
+    // @param : number of human players and bots
+    private void spawnPlayers(int humans, int botCount) {
+        // spawn the human players on the map
+        for (int i = 0; i < humans; i++) {
+            int[] sp = generateSpawn();
+            HumanPlayer player = new HumanPlayer(0, sp[0], sp[1], map.getTerrain(sp[0], sp[1]), 'P');
+            map.placeEntity(sp[0], sp[1], player.getIndicator());
+            players.add(player);
+            turnOrder.add(player);
+            schedule.add(player);
+        }
+        // spawn the bot players on the map
+        for (int i = 0; i < botCount; i++) {
+            int[] sp = generateSpawn();
+            BotPlayer bot = new BotPlayer(0, sp[0], sp[1], map.getTerrain(sp[0], sp[1]), 'B',
+                    new CopyableRandom(rand.nextLong()));
+            map.placeEntity(sp[0], sp[1], bot.getIndicator());
+            bots.add(bot);
+            turnOrder.add(bot);
+            schedule.add(bot);
+        }
+    }
+
     // main method
     public static void main(String[] args) {
         System.out.println("!! Dungeon of Doom !!");
@@ -52,14 +223,12 @@ public class GameLogic {
 
         // loop as long as state of game is still running
         while (logic.gameRunning()) {
-            // check if the human player is caught by the bot
-            if(logic.isCaught()) {
+            // check if the human player is caught by the bot, this ends the game
+            if(logic.checkCaught()) {
                 // if human player is caught, display lose message and gold collected by player
                 System.out.println("LOSE.\nYou have been caught by THE BOT!" +
-                        "\nGold collected: " + logic.player.getGold() + "/" + logic.map.getGoldRequired() +
+                        "\nGold collected: " + logic.lastCaught.getGold() + "/" + logic.map.getGoldRequired() +
                         "\n");
-                // ends game after lose message is displayed
-                logic.endGame();
                 break;
             }
             // check if its human player's turn
@@ -72,19 +241,10 @@ public class GameLogic {
                 System.out.println(logic.process(command));
                 // if not human player's turn, bots turn begins
             } else {
-                // nextAction() method called to decide what the bot's action is this turn
-                logic.bot.nextAction();
-                String action = logic.bot.getAction();
-                // check if the bot's action is look
-                if(Objects.equals(action, "look")) {
-                    // pass 5x5 string map received from look command to be processed by bot's setNearby() method
-                    logic.bot.setNearby(logic.process(action));
-                    // prompt bot to calculate what its next destination is after reading its 5x5 minimap
-                    logic.bot.nextDestination();
-                    // if action is not look, process as normal
-                } else {
-                    // process bot's action
-                    logic.process(action);
+                // the bot decides and processes its action, display lose message if the bot escaped
+                logic.botTurn();
+                if (logic.getResult() == GameResult.BOT_WIN) {
+                    System.out.println("LOSE");
                 }
             }
             // next line is used for testing purposes - displays current map
@@ -98,38 +258,238 @@ public class GameLogic {
         return running;
     }
 
+    // getResult() returns how the game ended
+    // @return : result of the game, UNFINISHED if still running
+    public GameResult getResult() {
+        return result;
+    }
+
+    // getSeed() returns the seed the game's random choices are made from
+    // the same map, seed and commands always play out the same way
+    // @return : seed of the game
+    public long getSeed() {
+        return seed;
+    }
+
+    // setCommandListener(CommandListener) sets the listener told about every command processed
+    // @param : the listener, null for none
+    public void setCommandListener(CommandListener listener) {
+        commandListener = listener;
+    }
+
+    // setBotSearch(MctsPlanner) makes the bots choose their commands by searching instead of by their rules
+    // forks of the game play their bots by the rules
+    // @param : the search, null to go back to rule-based bots
+    public void setBotSearch(MctsPlanner search) {
+        botSearch = search;
+    }
+
+    // getMap() returns the map the game is played on
+    // @return : the game map
+    public Map getMap() {
+        return map;
+    }
+
+    // getPlayer() returns the first human player
+    // @return : the human player, or null if none are left
+    public HumanPlayer getPlayer() {
+        return players.isEmpty() ? null : players.get(0);
+    }
+
+    // getBot() returns the first bot player
+    // @return : the bot player, or null if none are left
+    public BotPlayer getBot() {
+        return bots.isEmpty() ? null : bots.get(0);
+    }
+
+    // getPlayers() returns the human players still in the game
+    // @return : read-only list of human players
+    public List<HumanPlayer> getPlayers() {
+        return Collections.unmodifiableList(players);
+    }
+
+    // getBots() returns the bots still in the game
+    // @return : read-only list of bots
+    public List<BotPlayer> getBots() {
+        return Collections.unmodifiableList(bots);
+    }
+
+    // getCurrentPlayer() returns the player or bot whose turn it is
+    // @return : the current player, null once everyone has left
+    public Player getCurrentPlayer() {
+        return schedule.current();
+    }
+
+    // getTime() returns the tick of the current player's action
+    // @return : the tick, counted from 0 at the start of the game
+    public long getTime() {
+        return schedule.now();
+    }
+
+    // setActionInterval(Player, int) sets the ticks between a player's or bot's actions, from their next action on
+    // everyone starts with 1, so a bot with 2 acts every other time the players do
+    // @param : the player or bot and the ticks between their actions
+    public void setActionInterval(Player player, int ticks) {
+        schedule.setInterval(player, ticks);
+    }
+
+    // getActionInterval(Player) returns the ticks between a player's or bot's actions
+    public int getActionInterval(Player player) {
+        return schedule.getInterval(player);
+    }
+
+    // setSimultaneous(boolean) switches between taking turns, where each command is applied as it is entered,
+    // and simultaneous moves, where the commands of everyone acting in a tick are collected and applied together
+    // once the last of them is in (see resolveTick() for the order); responses to human players' commands then
+    // come from takeResponse(), and bots are told theirs when the tick is resolved
+    // @param : true for simultaneous moves
+    // @throws : IllegalStateException part way through a tick
+    public void setSimultaneous(boolean simultaneous) {
+        if (!actions.isEmpty()) {
+            throw new IllegalStateException("Cannot change how moves are resolved part way through a tick");
+        }
+        this.simultaneous = simultaneous;
+    }
+
+    // isSimultaneous() returns if the commands of a tick are resolved together
+    public boolean isSimultaneous() {
+        return simultaneous;
+    }
+
+    // takeResponse(Player) returns the response to a human player's last command once its tick has been resolved,
+    // with simultaneous moves
+    // @param : the player
+    // @return : the response, null if there is none (yet)
+    public String takeResponse(Player player) {
+        return responses.remove(player);
+    }
+
+    // getGoldField() returns the distance field to the nearest gold, kept up to date as gold is picked up
+    // @return : the gold flow field
+    public FlowField getGoldField() {
+        if (goldField == null) {
+            goldField = new FlowField(map, 'G');
+        }
+        return goldField;
+    }
+
+    // getExitField() returns the distance field to the nearest exit
+    // @return : the exit flow field
+    public FlowField getExitField() {
+        if (exitField == null) {
+            exitField = new FlowField(map, 'E');
+        }
+        return exitField;
+    }
+
+    // botTurn() lets the bot whose turn it is decide its action then processes it,
+    // passing the response back to the bot
+    // a look fills the bot's own viewport directly instead of building the text response
+    // @return : response of the bot's action, nothing for a look
+    public String botTurn() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        BotPlayer bot = (BotPlayer) getCurrentPlayer();
+        String output;
+        if (simultaneous) {
+            // the bot is told the response when the tick is resolved
+            String action = botSearch != null ? null : bot.nextCommand();
+            byte op = action != null ? parseCommand(action) : botSearch.choose(this);
+            submit(bot, op, action);
+            output = "";
+        } else if (botSearch != null) {
+            output = execute(botSearch.choose(this));
+        } else {
+            String action = bot.nextCommand();
+            byte op = parseCommand(action);
+            if (op == OP_LOOK) {
+                long lookStart = Metrics.ENABLED ? System.nanoTime() : 0;
+                look(bot, bot.getView());
+                if (commandListener != null) {
+                    commandListener.commandProcessed(bot, op, "");
+                }
+                endTurn(bot);
+                if (Metrics.ENABLED) {
+                    Metrics.command(op, lookStart);
+                }
+                bot.observeView();
+                output = "";
+            } else {
+                output = execute(op);
+                bot.observe(action, output);
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.botTurn(start);
+        }
+        return output;
+    }
+
+    // runBots() plays the bots' turns until it is a human player's turn again or the game has ended
+    public void runBots() {
+        while (running && !isPlayerTurn()) {
+            botTurn();
+            checkCaught();
+        }
+    }
+
+    // playTurn(String) processes a human player's command then lets the bots take their turns,
+    // for front-ends where the human's command drives the game (e.g. a network session)
+    // @param : command entered by the human player whose turn it is
+    // @return : response of the command, followed by a lose message if the game ended during the bots' turns
+    public String playTurn(String command) {
+        return playTurn(parseCommand(command));
+    }
+
+    // playTurn(byte) plays an already parsed human command then the bots' turns
+    // @param : opcode of the command
+    // @return : response of the command, followed by a lose message if the game ended during the bots' turns
+    public String playTurn(byte op) {
+        Player human = getCurrentPlayer();
+        String output = execute(op);
+        checkCaught();
+        runBots();
+        if (simultaneous) {
+            String response = takeResponse(human);
+            output = response == null ? "" : response;
+        }
+        if (!running) {
+            if (result == GameResult.CAUGHT) {
+                output += (output.isEmpty() ? "" : "\n") + "LOSE.\nYou have been caught by THE BOT!" +
+                        "\nGold collected: " + lastCaught.getGold() + "/" + map.getGoldRequired() + "\n";
+            } else if (result == GameResult.BOT_WIN) {
+                output += (output.isEmpty() ? "" : "\n") + "LOSE";
+            }
+        }
+        return output;
+    }
+
     // generateSpawn() returns a legal spawn point coordinates for a player/bot
-    // retrieves size of map, takes away border coordinates as its only #
+    // a single draw from the map's index of free tiles inside the border, however few of them there are
     // @return : valid player spawn point coordinates
+    // @throws : IllegalStateException if there is no free tile left to spawn on
     public int[] generateSpawn() {
-        Random rand = new Random();
-        boolean allowed = false;
-        int[] spawnPt = {0, 0};
-        // record the size of the map to ensure players are spawned within the map
-        int[] max = {map.getMapSize()[0], map.getMapSize()[1]};
-        while (!allowed) {
-            // loop through both y and x, assigning random integer to each
-            for (int i = 0; i < 2; i++) {
-                spawnPt[i] = rand.nextInt(max[i] - 2) + 1;
-            }
-            // if the coordinate is valid (e.g. not a wall '#') then allowed is set to true
-            // otherwise the loop is executed again until a valid spawn can be generated
-            if (map.canSpawn(spawnPt[0], spawnPt[1])) {
-                allowed = true;
-            }
+        int[] spawnPt = map.randomFreeTile(rand);
+        if (spawnPt == null) {
+            throw new IllegalStateException("No free tile to spawn on in map " + map.getMapName());
         }
-        // the valid spawn point is then returned
         return spawnPt;
     }
 
     // hello () returns the gold required to win for the current map
     // @return : Gold required to win.
     public String hello() {
-        if (!isPlayerTurn()) {
-            // if bot's turn, let bot know how much gold is needed to win
-            bot.setGold_needed(map.getGoldRequired());
+        return hello(getCurrentPlayer());
+    }
+
+    // hello(Player) returns the gold required to win, also telling a bot
+    // @param : the player or bot asking
+    // @return : Gold required to win.
+    private String hello(Player targetPlayer) {
+        if (targetPlayer instanceof BotPlayer) {
+            // if a bot asks, let the bot know how much gold is needed to win
+            ((BotPlayer) targetPlayer).setGold_needed(map.getGoldRequired());
         }
-        // return string message if human player's turn
+        // return string message for a human player
         return "Gold to win: " + map.getGoldRequired();
     }
 
@@ -139,34 +499,48 @@ public class GameLogic {
         return "Gold owned: " + targetPlayer.getGold();
     }
 
-    // look() returns a 5x5 mini-map surrounding the target player
+    // look() returns a mini-map surrounding the target player, 5x5 unless the look radius was changed
     // @param : target player to look at
-    // @returns : string of 5x5 map surrounding the target player
+    // @returns : string of the map surrounding the target player, one row per line
     public String look(Player targetPlayer) {
-        // player position on map taken as integer array (y,x)
+        if (lookView == null || lookView.getRadius() != lookRadius) {
+            lookView = new Viewport(lookRadius);
+        }
+        look(targetPlayer, lookView);
+        return lookView.toString();
+    }
+
+    // look(Player, Viewport) fills a viewport with the map surrounding the target player without building any text
+    // tiles outside of the map are seen as walls '#'
+    // @param : target player to look at and the viewport to fill, centred on the player
+    public void look(Player targetPlayer, Viewport view) {
         int[] pos = targetPlayer.getCoord();
-        StringBuilder miniMap = new StringBuilder();
-        // loop through the nearby coordinates of the player position and retrieves tiles
-        // so that a 5x5 map can be formed (with current player position as centre)
-        // (the map is 'drawn' from top left to bottom right)
-        // loop through rows
-        for (int y = pos[0] - 2; y < pos[0] + 3; y++) {
-            // loop through columns of each row
-            for (int x = pos[1] - 2; x < pos[1] + 3; x++) {
-                // if x or y is too small or too larger (coordinates outside of map)
-                // then the tile is considered as a wall '#' then added to the minimap
-                if ((x < 0) || (x > map.getMapSize()[1] - 1) || (y < 0) || (y > map.getMapSize()[0] - 1)) {
-                    miniMap.append("#");
-                    // if within the map, the tile character is retrieved then concatenated to the string minimap
-                } else {
-                    miniMap.append(map.getTile(y, x));
-                }
-            }
-            // a new line is added at the end of each row for user readability
-            miniMap.append("\n");
+        map.fillView(view, pos[0], pos[1]);
+    }
+
+    // lookDelta(Player) returns only the tiles around the target player that changed since their last lookdelta,
+    // or the full mini-map when that is shorter (see ViewTracker for the format)
+    // @param : target player to look at
+    // @returns : the changes to the player's mini-map
+    public String lookDelta(Player targetPlayer) {
+        ViewTracker tracker = viewTrackers.get(targetPlayer);
+        if (tracker == null || tracker.getRadius() != lookRadius) {
+            tracker = new ViewTracker(lookRadius);
+            viewTrackers.put(targetPlayer, tracker);
+        }
+        int[] pos = targetPlayer.getCoord();
+        StringBuilder out = new StringBuilder();
+        tracker.lookDelta(map, pos[0], pos[1], out);
+        return out.toString();
+    }
+
+    // setLookRadius(int) changes how far the look command sees, 2 giving the standard 5x5 mini-map
+    // @param : tiles seen from the player to the edge of the mini-map
+    public void setLookRadius(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("look radius must not be negative: " + radius);
         }
-        // the completed string minimap is returned
-        return String.valueOf(miniMap);
+        lookRadius = radius;
     }
 
     // movement(direction) updates a player's position on the map and returns if the movement action is successful
@@ -185,21 +559,21 @@ public class GameLogic {
             case "e" -> newPos = new int[]{oldPos[0], oldPos[1] + 1};
             case "w" -> newPos = new int[]{oldPos[0], oldPos[1] - 1};
         }
-        // retrieves the tile at what would be the player's new position after moving
-        // by the getTile(int, int) method, if the tile the player is moving to is
+        // retrieves the terrain at what would be the player's new position after moving
+        // by the getTerrain(int, int) method, if the tile the player is moving to is
         // a wall '#' then a fail message is returned and the movement is not committed
-        char newTile = map.getTile(newPos[0], newPos[1]);
+        char newTile = map.getTerrain(newPos[0], newPos[1]);
         if (newTile == '#') {
             return "Fail";
         } else {
-            // if the tile the player is moving to is not a wall, the tile the player is currently
-            // standing on is set back to normal, retrieved by getCurrentTile() method.
-            map.setMap(oldPos[0], oldPos[1], targetPlayer.getCurrentTile());
+            // if the tile the player is moving to is not a wall, the player is taken off its current tile,
+            // the terrain underneath is kept by the map so nothing needs restoring
+            map.removeEntity(oldPos[0], oldPos[1], targetPlayer.getIndicator());
             // set player's current tile to the new tile the player will be standing on after moving
             // by the setCurrentTile(char) method
             targetPlayer.setCurrentTile(newTile);
-            // set player indicator and coordinates on the map to the player's new position after moving
-            map.setMap(newPos[0], newPos[1], targetPlayer.getIndicator());
+            // set player indicator on the map at the player's new position after moving
+            map.placeEntity(newPos[0], newPos[1], targetPlayer.getIndicator());
             // set player's coordinates to that of the new position after moving
             targetPlayer.setCoord(newPos[0], newPos[1]);
             // return success message
@@ -209,15 +583,19 @@ public class GameLogic {
 
     // pickup() returns if a player's attempt to pick up gold is successful or not
     // followed by the number of gold owned by the player
+    // the tile is read from the map, not the player's current tile, which is stale if another player standing on
+    // the same tile picked the gold up first; everyone on the tile sees it empty afterwards
     // @param : the target player
     // @return : if the pickup action is successful and the gold owned by the player
     public String pickup(Player targetPlayer) {
-        // checks if the current tile stood on by the player is gold 'G'
-        if (targetPlayer.getCurrentTile() == 'G') {
+        // checks if the tile stood on by the player is gold 'G'
+        if (refresh(targetPlayer).getCurrentTile() == 'G') {
             // call method to increment player's gold count
             targetPlayer.collectedGold();
             // call method to set the tile to and empty space as gold has been collected '.'
-            targetPlayer.setCurrentTile('.');
+            int[] pos = targetPlayer.getCoord();
+            map.setTerrain(pos[0], pos[1], '.');
+            refreshAt(pos[0], pos[1]);
             // return messages on whether the pickup was successful or not and the player's current gold count
             return "Success. Gold owned: " + targetPlayer.getGold();
         } else {
@@ -229,24 +607,33 @@ public class GameLogic {
     // @param : target player
     // @return : if the player has won or lost, nothing if player not on exit tile
     public String quit(Player targetPlayer) {
-        // checks if the player is currently standing on an exit tile
-        if (targetPlayer.getCurrentTile() == 'E') {
+        // checks if the player is currently standing on an exit tile, as the map has it now
+        if (refresh(targetPlayer).getCurrentTile() == 'E') {
             // if player standing on exit tile, check if player's owned gold is enough to win
             if (targetPlayer.getGold() == map.getGoldRequired()) {
                 // if player has enough gold to win, stop game and return win message
                 running = false;
                 // if human player has won, return win message
-                if (targetPlayer == player) {
+                if (targetPlayer instanceof HumanPlayer) {
+                    result = GameResult.PLAYER_WIN;
                     return "WIN" + "\nGold collected: " + targetPlayer.getGold() + "/" + map.getGoldRequired() +
                             "\n";
-                    // if bot has won, output lose message
+                    // if bot has won, return lose message
                 } else {
-                    System.out.println("LOSE");
+                    result = GameResult.BOT_WIN;
                     return "LOSE";
                 }
-                // if player doesn't have enough gold to win, stop game and return lose message
+                // if player doesn't have enough gold to win, the player leaves the game and a lose message is returned
+                // the game stops once every human player or every bot has left
             } else {
-                running = false;
+                remove(targetPlayer);
+                if (players.isEmpty()) {
+                    running = false;
+                    result = GameResult.PLAYER_LOSE;
+                } else if (bots.isEmpty()) {
+                    running = false;
+                    result = GameResult.BOT_LOSE;
+                }
                 return "LOSE";
             }
             // if player not currently standing on an exit tile, return nothing, game continues
@@ -255,25 +642,205 @@ public class GameLogic {
         }
     }
 
-    // isCaught() checks if the bot and player are on the same tile then returns if the player has been caught by the bot
-    // @return : boolean value - if player has been caught by the bot
+    // isCaught() checks if any human player shares a tile with a bot
+    // each check is a single lookup in the map's occupancy layer, so checking every player costs O(players)
+    // @return : boolean value - if a player has been caught by a bot
     public Boolean isCaught() {
-        // format (y,x)
-        int[] p = player.getCoord();
-        int[] b = bot.getCoord();
-        // returns True if both coordinates match, False if both coordinates do not match
-        return p[0] == b[0] && p[1] == b[1];
+        for (HumanPlayer player : players) {
+            if (map.countEntities(player.getY(), player.getX(), 'B') > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // checkCaught() removes every human player caught by a bot from the game
+    // and ends the game once no human players are left
+    // @return : boolean value - if the game has ended because the players were caught
+    public boolean checkCaught() {
+        for (int i = players.size() - 1; i >= 0; i--) {
+            HumanPlayer player = players.get(i);
+            if (map.countEntities(player.getY(), player.getX(), 'B') > 0) {
+                lastCaught = player;
+                remove(player);
+            }
+        }
+        if (lastCaught != null && players.isEmpty()) {
+            result = GameResult.CAUGHT;
+            endGame();
+            return true;
+        }
+        return false;
+    }
+
+    // remove(Player) takes a player or bot off the map and out of the turn order
+    // @param : the player to remove
+    private void remove(Player target) {
+        map.removeEntity(target.getY(), target.getX(), target.getIndicator());
+        players.remove(target);
+        bots.remove(target);
+        viewTrackers.remove(target);
+        turnOrder.remove(target);
+        schedule.remove(target);
     }
 
-    // isPlayerTurn() returns if it is the human player's turn
-    // @return : boolean value of playerTurn
+    // isPlayerTurn() returns if it is a human player's turn
+    // @return : boolean value - true if the current player is human
     public Boolean isPlayerTurn() {
-        return playerTurn;
+        return schedule.current() instanceof HumanPlayer;
+    }
+
+    // endTurn(Player) schedules the next action of the player who just acted, unless they have left the game
+    // @param : the player who just acted
+    private void endTurn(Player actor) {
+        if (schedule.current() == actor) {
+            schedule.next();
+        }
     }
 
-    // endTurn() reassigns opposite boolean value to playerTurn
-    private void endTurn() {
-        playerTurn = !playerTurn;
+    // submit(Player, byte, String) collects a command for the tick being played with simultaneous moves,
+    // resolving the tick once everyone acting in it has chosen
+    // @param : the player or bot acting, opcode of the command and the bot's command as it chose it (null if the
+    //          bot did not choose by its rules or for a human player)
+    private void submit(Player actor, byte op, String botCommand) {
+        actions.add(new Action(actor, op, botCommand));
+        long tick = schedule.now();
+        endTurn(actor);
+        if (schedule.size() == 0 || schedule.now() > tick) {
+            resolveTick();
+        }
+    }
+
+    // resolveTick() applies the commands collected for a tick together, in an order that does not depend on who
+    // chose first:
+    // 1. moves, each checked against where everyone stood at the start of the tick; a human player and a bot
+    //    swapping tiles meet on the way, so the player's move fails and the bot catches them
+    // 2. pickups, in turn order, so only the first of several on one gold tile gets it
+    // 3. quits, in turn order, so the first to win ends the game and the rest are not played
+    // 4. everything else (hello, gold, look, lookdelta) sees the map at the end of the tick
+    // listeners then hear of every command in the order chosen, bots are told their responses and human
+    // players' responses are kept for takeResponse()
+    private void resolveTick() {
+        int count = actions.size();
+        // cells each mover leaves and enters, -1 for anything but a move into open ground
+        long[] from = new long[count];
+        long[] to = new long[count];
+        HashSet<Long> botMoves = new HashSet<>();
+        long cells = (long) map.getHeight() * map.getWidth();
+        for (int i = 0; i < count; i++) {
+            Action action = actions.get(i);
+            from[i] = -1;
+            to[i] = -1;
+            if (action.op < OP_NORTH || action.op > OP_WEST) {
+                continue;
+            }
+            int y = action.player.getY();
+            int x = action.player.getX();
+            int ny = y + (action.op == OP_NORTH ? -1 : action.op == OP_SOUTH ? 1 : 0);
+            int nx = x + (action.op == OP_WEST ? -1 : action.op == OP_EAST ? 1 : 0);
+            if (map.getTerrain(ny, nx) == '#') {
+                action.output = "Fail";
+                continue;
+            }
+            from[i] = (long) y * map.getWidth() + x;
+            to[i] = (long) ny * map.getWidth() + nx;
+            if (action.player instanceof BotPlayer) {
+                botMoves.add(from[i] * cells + to[i]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            Action action = actions.get(i);
+            if (from[i] < 0) {
+                continue;
+            }
+            if (action.player instanceof HumanPlayer && botMoves.contains(to[i] * cells + from[i])) {
+                action.output = "Fail";
+            } else {
+                action.output = movement(action.player, COMMANDS[action.op]);
+            }
+        }
+        for (Action action : actions) {
+            if (action.op == OP_PICKUP) {
+                action.output = pickup(action.player);
+            }
+        }
+        for (Action action : actions) {
+            if (action.op == OP_QUIT && running) {
+                action.output = quit(action.player);
+            }
+        }
+        for (Action action : actions) {
+            Player target = action.player;
+            switch (action.op) {
+                case OP_HELLO -> action.output = hello(target);
+                case OP_GOLD -> action.output = gold(target);
+                case OP_LOOK -> {
+                    if (action.botCommand != null) {
+                        look(target, ((BotPlayer) target).getView());
+                    } else {
+                        action.output = look(target);
+                    }
+                }
+                case OP_LOOKDELTA -> action.output = lookDelta(target);
+                default -> {
+                    // moves, pickups and quits were played above, nothing is outputted if command is invalid
+                }
+            }
+        }
+        ArrayList<Action> resolved = new ArrayList<>(actions);
+        actions.clear();
+        for (Action action : resolved) {
+            if (commandListener != null) {
+                commandListener.commandProcessed(action.player, action.op, action.output);
+            }
+            if (action.player instanceof HumanPlayer) {
+                responses.put(action.player, action.output);
+            } else if (action.botCommand != null) {
+                BotPlayer bot = (BotPlayer) action.player;
+                if (action.op == OP_LOOK) {
+                    bot.observeView();
+                } else {
+                    bot.observe(action.botCommand, action.output);
+                }
+            }
+        }
+    }
+
+    // refresh(Player) makes a player's current tile what the map has under them now, which another player's
+    // pickup may have changed
+    // @return : the player
+    private Player refresh(Player player) {
+        player.setCurrentTile(map.getTerrain(player.getY(), player.getX()));
+        return player;
+    }
+
+    // refreshAt(int, int) refreshes the current tile of every player and bot standing on a tile
+    // players may share a tile, and bots and scripted players decide from their current tile
+    private void refreshAt(int y, int x) {
+        for (Player player : players) {
+            if (player.getY() == y && player.getX() == x) {
+                refresh(player);
+            }
+        }
+        for (Player bot : bots) {
+            if (bot.getY() == y && bot.getX() == x) {
+                refresh(bot);
+            }
+        }
+    }
+
+    // a command collected for a tick with simultaneous moves, and its response once resolved
+    private static final class Action {
+        private final Player player;
+        private final byte op;
+        private final String botCommand;
+        private String output = "";
+
+        Action(Player player, byte op, String botCommand) {
+            this.player = player;
+            this.op = op;
+            this.botCommand = botCommand;
+        }
     }
 
     // endGame() sets running to false, terminating the game
@@ -285,34 +852,127 @@ public class GameLogic {
     // @param : command entered by player or bot
     // @return : response of any command executed
     public String process(String command) {
-        try {
-            // convert the command to lower case
-            command = command.toLowerCase();
-        } catch (NullPointerException e) {
-            // end current player's turn if an error has occurred
-            endTurn();
-            return "";
-        }
+        return execute(parseCommand(command));
+    }
+
+    // execute(byte) processes a command already parsed into an opcode for the player of the current turn
+    // @param : opcode of the command (OP_INVALID for anything that is not a command)
+    // @return : response of the command, nothing if the command is invalid
+    public String execute(byte op) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         // set the target player of commands to the player of current turn
-        Player targetPlayer = player;
-        if (!isPlayerTurn()) {
-            targetPlayer = bot;
+        Player targetPlayer = getCurrentPlayer();
+        if (simultaneous) {
+            // the response is only known once the tick is resolved, see takeResponse()
+            submit(targetPlayer, op, null);
+            if (Metrics.ENABLED) {
+                Metrics.command(op, start);
+            }
+            return "";
         }
-        // checks if input command by the player is one of the following cases
-        // the command is then processed if valid
+        // checks which command the opcode is, the command is then processed if valid
         String output = "";
-        switch (command) {
-            case "hello" -> output = hello();
-            case "gold" -> output = gold(targetPlayer);
-            case "look" -> output = look(targetPlayer);
-            case "n", "s", "e", "w" -> output = movement(targetPlayer, command);
-            case "pickup" -> output = pickup(targetPlayer);
-            case "quit" -> output = quit(targetPlayer);
+        switch (op) {
+            case OP_HELLO -> output = hello(targetPlayer);
+            case OP_GOLD -> output = gold(targetPlayer);
+            case OP_LOOK -> output = look(targetPlayer);
+            case OP_LOOKDELTA -> output = lookDelta(targetPlayer);
+            case OP_NORTH -> output = movement(targetPlayer, "n");
+            case OP_SOUTH -> output = movement(targetPlayer, "s");
+            case OP_EAST -> output = movement(targetPlayer, "e");
+            case OP_WEST -> output = movement(targetPlayer, "w");
+            case OP_PICKUP -> output = pickup(targetPlayer);
+            case OP_QUIT -> output = quit(targetPlayer);
+            default -> {
+                // nothing is outputted if command is invalid
+            }
+        }
+        if (commandListener != null) {
+            commandListener.commandProcessed(targetPlayer, op, output);
         }
         // ends the current player's turn then returns the output from processing the command
-        endTurn();
+        endTurn(targetPlayer);
+        if (Metrics.ENABLED) {
+            Metrics.command(op, start);
+        }
         return output;
-        // nothing is outputted if command is invalid
+    }
+
+    // commandName(byte) returns the name of a command
+    // @param : opcode of the command
+    // @return : the command as typed (e.g. "n"), "invalid" for OP_INVALID or an unknown opcode
+    public static String commandName(byte op) {
+        return op > OP_INVALID && op < COMMANDS.length ? COMMANDS[op] : "invalid";
+    }
+
+    // parseCommand(String) converts a command into its opcode, ignoring case, without creating any strings
+    // @param : the command
+    // @return : opcode of the command, OP_INVALID if it is not a command (or null)
+    public static byte parseCommand(String command) {
+        return command == null ? OP_INVALID : parseCommand(command, 0, command.length());
+    }
+
+    // parseCommand(String, int, int) converts part of a string into an opcode
+    // @param : the string and the start (inclusive) and end (exclusive) of the command within it
+    // @return : opcode of the command, OP_INVALID if it is not a command
+    private static byte parseCommand(String text, int start, int end) {
+        int length = end - start;
+        if (length == 1) {
+            switch (Character.toLowerCase(text.charAt(start))) {
+                case 'n': return OP_NORTH;
+                case 's': return OP_SOUTH;
+                case 'e': return OP_EAST;
+                case 'w': return OP_WEST;
+                default: return OP_INVALID;
+            }
+        }
+        for (byte op = OP_HELLO; op < COMMANDS.length; op++) {
+            String name = COMMANDS[op];
+            if (name.length() == length && text.regionMatches(true, start, name, 0, length)) {
+                return op;
+            }
+        }
+        return OP_INVALID;
+    }
+
+    // parseBatch(String) splits a sequence of commands separated by spaces into opcodes
+    // @param : the commands, e.g. "n n e look"
+    // @return : opcodes of the commands in order
+    public static byte[] parseBatch(String commands) {
+        byte[] ops = new byte[8];
+        int count = 0;
+        int i = 0;
+        int length = commands.length();
+        while (i < length) {
+            while (i < length && Character.isWhitespace(commands.charAt(i))) {
+                i += 1;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(commands.charAt(i))) {
+                i += 1;
+            }
+            if (i > start) {
+                if (count == ops.length) {
+                    ops = Arrays.copyOf(ops, count * 2);
+                }
+                ops[count++] = parseCommand(commands, start, i);
+            }
+        }
+        return Arrays.copyOf(ops, count);
+    }
+
+    // processBatch(String) plays a sequence of the human player's commands, each followed by the bots' turns
+    // as with playTurn(), stopping early once the game has ended (e.g. after quit or being caught)
+    // saves a front-end sending each command separately
+    // @param : the commands separated by spaces
+    // @return : the responses of the commands that were played, in order
+    public List<String> processBatch(String commands) {
+        byte[] ops = parseBatch(commands);
+        ArrayList<String> responses = new ArrayList<>(ops.length);
+        for (int i = 0; i < ops.length && running; i++) {
+            responses.add(playTurn(ops[i]));
+        }
+        return responses;
     }
 
 }
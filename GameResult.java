@@ -0,0 +1,15 @@
+// possible outcomes of a game, recorded by the game logic when the game ends
+public enum GameResult {
+    // game is still running or was stopped before it ended (e.g. turn limit in a simulation)
+    UNFINISHED,
+    // human player quit on an exit with enough gold
+    PLAYER_WIN,
+    // human player quit on an exit without enough gold
+    PLAYER_LOSE,
+    // human player was caught by the bot
+    CAUGHT,
+    // bot quit on an exit with enough gold
+    BOT_WIN,
+    // bot quit on an exit without enough gold
+    BOT_LOSE
+}
@@ -0,0 +1,521 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// TCP game server, every connection plays its own game against a bot on its own copy of the map
+// the protocol is the console's: one command per line (hello, gold, look, n, s, e, w, pickup, quit),
+// each response is followed by a line holding a single '.' so clients know where it ends;
+// a line may hold several commands separated by spaces, which are played in order and answered together
+// with one response each (fewer if the game ends part way); the connection is closed once the game is over
+// connections are shared out between a few event-loop threads, each multiplexing its sessions on one
+// NIO selector, and the bots' turns are played inline straight after the human's command; bots that search
+// for their commands take their whole time budget, so those sessions play their commands on a separate, fixed
+// pool of threads and the event loop carries on with the other sessions meanwhile (see setBotSearch)
+public class GameServer {
+    // line ending a response
+    private static final String END = ".\n";
+    // longest command line accepted before the connection is dropped
+    private static final int MAX_LINE = 1024;
+    // time between checks of the map file for changes
+    private static final long RELOAD_MILLIS = 1000;
+
+    // map every session plays an overlay of
+    private volatile Map template;
+    // file the template was loaded from, checked for changes through the shared MapRegistry off the event loops,
+    // null for a map not loaded from a file
+    private final String mapFile;
+    // thread checking the map file, null for a map not loaded from a file
+    private ScheduledExecutorService reloader;
+    // message of the last failed reload reported, null once the file loads again
+    private String reloadFailure;
+    // base seed, each session uses the next seed in turn
+    private final AtomicLong nextSeed;
+    // event loops sessions are shared between
+    private final EventLoop[] loops;
+    // listening socket and the thread accepting connections
+    private ServerSocketChannel server;
+    private Thread acceptor;
+    private volatile boolean running;
+    // journal every session's game is recorded in, and the map file it names, null when not recording
+    private ReplayJournal journal;
+    private String journalMap;
+    // search the bots of sessions started from now on choose their commands with, null for rule-based bots
+    private MctsPlanner botSearch;
+    // threads playing the commands of sessions whose bots search, a fixed number sized by the first search set,
+    // null until there is a search
+    private ExecutorService searchThreads;
+
+    // Constructor
+    // @param : template map, base seed for the sessions and number of event-loop threads
+    public GameServer(Map template, long seed, int threads) throws IOException {
+        this(template, null, seed, threads);
+    }
+
+    // Constructor for a map loaded from a file, the file is checked every second and sessions started after it
+    // changes play the new map; if it no longer loads, sessions keep playing the map as last loaded
+    // @param : template map, the file it was loaded from, base seed for the sessions and number of event-loop threads
+    public GameServer(Map template, String mapFile, long seed, int threads) throws IOException {
+        this.template = template;
+        this.mapFile = mapFile;
+        nextSeed = new AtomicLong(seed);
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    // setJournal(ReplayJournal, String) records the game of every session started from now on in a journal
+    // @param : the journal and the file the template map was loaded from, null for the default map
+    public void setJournal(ReplayJournal journal, String mapFile) {
+        this.journal = journal;
+        journalMap = mapFile;
+    }
+
+    // setBotSearch(MctsPlanner) makes the bots of sessions started from now on choose their commands by searching,
+    // each bot turn then takes about the search's time budget, played off the event loops
+    // a decision keeps its session's thread busy for the whole budget, with help from the search's own pool of
+    // getThreads() - 1 workers shared by every decision; the session threads are the CPUs less those workers
+    // (at least one), so searching never runs more threads than the machine has CPUs (or the search has threads)
+    // however many sessions connect; sessions waiting for a thread queue, at most one entry each as a session
+    // reads nothing more until its commands are played, and a session's response waits at most about
+    // (searching sessions / session threads) budgets
+    // searching bots choose by the clock, so their games cannot be replayed: do not record them in a journal
+    // @param : the search, null for rule-based bots
+    public void setBotSearch(MctsPlanner search) {
+        if (search != null && searchThreads == null) {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            searchThreads = Executors.newFixedThreadPool(Math.max(1, cpus - (search.getThreads() - 1)), r -> {
+                Thread thread = new Thread(r, "game-server-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        botSearch = search;
+    }
+
+    // start(int) binds the port and starts accepting connections
+    // @param : port to listen on, 0 for any free port
+    // @return : the port being listened on
+    public int start(int port) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 4096);
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        acceptor = new Thread(this::acceptLoop, "game-server-accept");
+        acceptor.start();
+        if (mapFile != null) {
+            reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "game-server-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(this::reload, RELOAD_MILLIS, RELOAD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    // stop() closes the listening socket and every session, finishing the record of each recorded game
+    // commands being played on the search threads are let finish first
+    public void stop() throws IOException {
+        running = false;
+        server.close();
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+        try {
+            acceptor.join();
+            if (searchThreads != null) {
+                searchThreads.shutdown();
+                searchThreads.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            // each loop closes its own sessions once it sees the server stopping
+            for (EventLoop loop : loops) {
+                loop.selector.wakeup();
+            }
+            for (EventLoop loop : loops) {
+                loop.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // getSessionCount() returns the number of open sessions over all event loops
+    public int getSessionCount() {
+        int sessions = 0;
+        for (EventLoop loop : loops) {
+            sessions += loop.sessions;
+        }
+        return sessions;
+    }
+
+    // acceptLoop() accepts connections and hands them to the event loops in turn
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // reload() takes the map file's current template, loading it if it has changed
+    // a file that has gone or is broken is reported once, and the map as last loaded is kept
+    private void reload() {
+        try {
+            template = MapRegistry.shared().template(mapFile);
+            reloadFailure = null;
+        } catch (IOException | RuntimeException e) {
+            String failure = String.valueOf(e.getMessage());
+            if (!failure.equals(reloadFailure)) {
+                System.out.println("Map reload failed, playing the map as last loaded: " + failure);
+                reloadFailure = failure;
+            }
+        }
+    }
+
+    // sessionMap() returns the map for a new session, an overlay of the latest template
+    private Map sessionMap() {
+        return template.overlay();
+    }
+
+    // newSession() creates the game for a new session, recording it if there is a journal
+    private Session newSession() {
+        Session session = new Session(new GameLogic(sessionMap(), nextSeed.getAndIncrement()));
+        session.game.setBotSearch(botSearch);
+        session.searching = botSearch != null;
+        if (journal != null) {
+            session.recorder = journal.start(session.game, journalMap);
+        }
+        return session;
+    }
+
+    // one event-loop thread with its selector and the sessions registered with it
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        // connections accepted but not yet registered with the selector
+        private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        // sessions whose commands have been played on the search threads, with responses waiting to be sent
+        private final ConcurrentLinkedQueue<SelectionKey> played = new ConcurrentLinkedQueue<>();
+        // number of open sessions, only written by this loop's thread
+        private volatile int sessions;
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "game-server-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        // add(SocketChannel) passes a new connection to this loop
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        // a failure in one session (e.g. a map with no free tile left to spawn on) only closes that session,
+        // the loop carries on with the others
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        register(channel);
+                    }
+                    SelectionKey done;
+                    while ((done = played.poll()) != null) {
+                        Session session = (Session) done.attachment();
+                        if (session.failure != null) {
+                            fail(done, session.failure);
+                        } else {
+                            respond(done);
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        try {
+                            handle(key);
+                        } catch (ClosedSelectorException e) {
+                            throw e;
+                        } catch (RuntimeException e) {
+                            fail(key, e);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    System.out.println("Event loop stopped: " + e.getMessage());
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        // register(SocketChannel) starts the session of a new connection, closing the connection if it fails to
+        private void register(SocketChannel channel) {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, newSession());
+                sessions += 1;
+            } catch (ClosedSelectorException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Session failed to start: " + e);
+                try {
+                    channel.close();
+                } catch (IOException closeFailed) {
+                    // nothing more can be done with a connection that fails to close
+                }
+            }
+        }
+
+        // fail(SelectionKey, RuntimeException) reports a session that failed and closes it
+        private void fail(SelectionKey key, RuntimeException e) {
+            System.out.println("Session failed: " + e);
+            close(key);
+        }
+
+        // closeAll() closes every session of this loop and connections not yet registered, then the selector
+        private void closeAll() {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    close(key);
+                }
+            } catch (ClosedSelectorException e) {
+                // the selector was closed with its sessions
+            }
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // nothing more can be done with a connection that fails to close
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("Selector failed to close: " + e.getMessage());
+            }
+        }
+
+        // handle(SelectionKey) reads commands from or writes responses to a ready connection
+        private void handle(SelectionKey key) {
+            Session session = (Session) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    if (channel.read(session.in) < 0) {
+                        close(key);
+                        return;
+                    }
+                    if (session.searching) {
+                        // stop reading until the commands are played, the responses are sent from this loop
+                        key.interestOps(0);
+                        searchThreads.execute(() -> {
+                            try {
+                                session.readLines();
+                            } catch (RuntimeException e) {
+                                session.failure = e;
+                            }
+                            played.add(key);
+                            selector.wakeup();
+                        });
+                        return;
+                    }
+                    session.readLines();
+                }
+                respond(key);
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+
+        // respond(SelectionKey) writes the responses waiting for a connection and waits for its next commands,
+        // closing it once the game is over and everything is sent
+        private void respond(SelectionKey key) {
+            Session session = (Session) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+            try {
+                if (key.isValid()) {
+                    session.flush(channel);
+                    if (session.out.isEmpty()) {
+                        if (session.closing) {
+                            close(key);
+                            return;
+                        }
+                        key.interestOps(SelectionKey.OP_READ);
+                    } else {
+                        // the socket buffer is full, wait until it can take more
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+
+        // close(SelectionKey) finishes the record of a session's game and closes its connection, once
+        private void close(SelectionKey key) {
+            if (!key.channel().isOpen()) {
+                return;
+            }
+            Session session = (Session) key.attachment();
+            if (session.recorder != null) {
+                try {
+                    session.recorder.finish();
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Journal write failed: " + e.getMessage());
+                }
+            }
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // nothing more can be done with a connection that fails to close
+            }
+            sessions -= 1;
+        }
+    }
+
+    // the game and buffers of one connection
+    private static final class Session {
+        private final GameLogic game;
+        // bytes read but not yet split into lines
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        // responses waiting to be written
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        // responses to the lines of the current read, sent together in one buffer
+        private final StringBuilder reply = new StringBuilder();
+        // true once the game is over and the connection should close after the last response
+        private boolean closing;
+        // records the game in the server's journal, null when not recording
+        private ReplayJournal.Recorder recorder;
+        // true if the bots search for their commands, which are then played on the search threads
+        private boolean searching;
+        // what went wrong playing commands on the search threads, null if nothing did
+        private RuntimeException failure;
+
+        Session(GameLogic game) {
+            this.game = game;
+        }
+
+        // readLines() plays every complete command line received so far
+        void readLines() {
+            in.flip();
+            int start = in.position();
+            for (int i = start; i < in.limit() && !closing; i++) {
+                if (in.get(i) == '\n') {
+                    int end = i > start && in.get(i - 1) == '\r' ? i - 1 : i;
+                    String command = new String(in.array(), start, end - start, StandardCharsets.US_ASCII).trim();
+                    List<String> responses = game.processBatch(command);
+                    // an empty line still takes the player's turn, like an invalid command
+                    if (responses.isEmpty()) {
+                        respond(game.playTurn(command));
+                    }
+                    for (String response : responses) {
+                        respond(response);
+                    }
+                    closing = !game.gameRunning();
+                    start = i + 1;
+                }
+            }
+            in.position(start);
+            in.compact();
+            if (reply.length() > 0) {
+                out.add(ByteBuffer.wrap(reply.toString().getBytes(StandardCharsets.US_ASCII)));
+                reply.setLength(0);
+            }
+            // a line longer than the buffer can never complete
+            if (!in.hasRemaining()) {
+                closing = true;
+            }
+        }
+
+        // respond(String) adds a response followed by the end marker to the reply
+        private void respond(String response) {
+            reply.append(response);
+            if (!response.isEmpty() && !response.endsWith("\n")) {
+                reply.append('\n');
+            }
+            reply.append(END);
+        }
+
+        // flush(SocketChannel) writes queued responses until done or the socket buffer is full
+        void flush(SocketChannel channel) throws IOException {
+            while (!out.isEmpty()) {
+                ByteBuffer buf = out.peek();
+                channel.write(buf);
+                if (buf.hasRemaining()) {
+                    return;
+                }
+                out.poll();
+            }
+        }
+    }
+
+    // main method - runs the server until the process is stopped
+    // arguments: [port] [map file] [threads] [seed] [journal file] [bot search milliseconds] [bot search threads],
+    // "default" uses the built-in map, "-" for no journal and 0 milliseconds for rule-based bots
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        String mapFile = args.length > 1 ? args[1] : "default";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        Map template = SimulationRunner.loadTemplate(mapFile);
+        // the built-in map, also played when the file fails to load, has no file to follow
+        GameServer gameServer = new GameServer(template, template.isTemplate() ? mapFile : null, seed, threads);
+        boolean search = args.length > 5 && Long.parseLong(args[5]) > 0;
+        boolean record = args.length > 4 && !args[4].equals("-");
+        if (search && record) {
+            // searching bots choose by the clock, ReplayTool could not play their games again
+            System.out.println("Games against searching bots cannot be replayed, run without a journal");
+            System.exit(2);
+        }
+        if (search) {
+            gameServer.setBotSearch(new MctsPlanner(Long.parseLong(args[5]),
+                    args.length > 6 ? Integer.parseInt(args[6]) : 1));
+        }
+        if (record) {
+            ReplayJournal journal = new ReplayJournal(java.nio.file.Path.of(args[4]), 1000);
+            gameServer.setJournal(journal, mapFile.equals("default") ? null : mapFile);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.out.println("Journal close failed: " + e.getMessage());
+                }
+            }));
+        }
+        System.out.println("Dungeon of Doom server listening on port " + gameServer.start(port));
+    }
+}
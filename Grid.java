@@ -0,0 +1,14 @@
+// interface for a rectangular grid of tiles that can be searched for paths
+// coordinates are in the format (y,x), anything outside the grid is treated as a wall
+public interface Grid {
+
+    // getHeight() returns the number of rows of the grid
+    int getHeight();
+
+    // getWidth() returns the number of columns of the grid
+    int getWidth();
+
+    // isWalkable(y, x) returns if a player can stand on the tile at the given coordinates
+    // only called with coordinates inside the grid
+    boolean isWalkable(int y, int x);
+}
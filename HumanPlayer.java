@@ -5,4 +5,9 @@ public class HumanPlayer extends Player{
         super(gold, y, x, currentTile, indicator);
     }
 
+    // copy constructor
+    public HumanPlayer(HumanPlayer other) {
+        super(other);
+    }
+
 }
@@ -0,0 +1,100 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// histogram of latencies in nanoseconds with log-scaled buckets, in the style of an HDR histogram
+// each power of two is split into 8 sub-buckets, so any recorded value is known to within 12.5%
+// from 1ns up to the largest long; recording is lock-free and allocates nothing
+public class LatencyHistogram {
+    // sub-buckets per power of two, as bits and as a count
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // values below SUB_COUNT have a bucket each, then SUB_COUNT buckets per power of two up to 2^63
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // record(long) adds one value
+    // @param : the latency in nanoseconds, negative values count as 0
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    // getCount() returns the number of values recorded
+    public long getCount() {
+        return count.sum();
+    }
+
+    // getMean() returns the mean of the values recorded
+    // @return : mean in nanoseconds, 0 if nothing was recorded
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : total.sum() / (double) n;
+    }
+
+    // getMax() returns the largest value recorded
+    public long getMax() {
+        return max.get();
+    }
+
+    // percentile(double) returns the value below which a share of the recorded values fall
+    // @param : the share, from 0 to 100
+    // @return : the upper end of the bucket holding that value in nanoseconds, 0 if nothing was recorded
+    public long percentile(double percent) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // reset() forgets every value recorded, values recorded at the same time may be kept or lost
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    // bucket(long) returns the bucket of a value
+    static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int top = (int) (value >>> (exponent - SUB_BITS));
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + top - SUB_COUNT;
+    }
+
+    // upperBound(int) returns the largest value that falls in a bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long top = bucket % SUB_COUNT + SUB_COUNT;
+        return ((top + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// load generator for GameServer
+// opens a number of idle connections that are held open, plus a number of active connections that
+// each send one command at a time and time the round trip until the response's end marker arrives
+// a connection whose game ends is replaced by a new one
+// with a batch size above one, each line sent holds that many commands and a round trip ends
+// once all of their responses have arrived
+public class LoadClient {
+    // commands the active connections cycle through
+    private static final String[] COMMANDS = {"hello", "look", "n", "e", "s", "w", "gold", "pickup"};
+
+    // state of one active connection
+    private static final class Conn {
+        final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        int next;
+        long sentAt;
+        // position the end marker search has reached, start of the current line and markers found
+        int scanned;
+        int lineStart;
+        int markers;
+    }
+
+    // commands sent per line
+    private static int batch = 1;
+
+    // main method
+    // arguments: [host] [port] [active connections] [seconds] [idle connections] [batch size]
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int active = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int idle = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        batch = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        InetSocketAddress address = new InetSocketAddress(host, port);
+
+        ArrayList<SocketChannel> idleChannels = new ArrayList<>();
+        for (int i = 0; i < idle; i++) {
+            idleChannels.add(SocketChannel.open(address));
+        }
+        System.out.println("Idle connections open: " + idleChannels.size());
+
+        Selector selector = Selector.open();
+        for (int i = 0; i < active; i++) {
+            connect(selector, address);
+        }
+        long[] latencies = new long[1 << 20];
+        int count = 0;
+        long games = 0;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel channel = (SocketChannel) key.channel();
+                Conn conn = (Conn) key.attachment();
+                int n = channel.read(conn.in);
+                if (n < 0) {
+                    // the game is over, start another one
+                    key.cancel();
+                    channel.close();
+                    games += 1;
+                    connect(selector, address);
+                    continue;
+                }
+                if (countMarkers(conn) >= batch) {
+                    long latency = System.nanoTime() - conn.sentAt;
+                    if (count < latencies.length) {
+                        latencies[count] = latency;
+                    }
+                    count += 1;
+                    conn.in.clear();
+                    conn.scanned = 0;
+                    conn.lineStart = 0;
+                    conn.markers = 0;
+                    send(channel, conn);
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        for (SocketChannel channel : idleChannels) {
+            channel.close();
+        }
+        int recorded = Math.min(count, latencies.length);
+        Arrays.sort(latencies, 0, recorded);
+        System.out.printf("Round trips: %d, commands: %d (%.0f/s), games finished: %d%n",
+                count, count * (long) batch, count * (double) batch / seconds, games);
+        if (recorded > 0) {
+            System.out.printf("Round trip us: p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                    latencies[recorded / 2] / 1e3, latencies[(int) (recorded * 0.99)] / 1e3,
+                    latencies[(int) (recorded * 0.999)] / 1e3, latencies[recorded - 1] / 1e3);
+        }
+    }
+
+    // connect(Selector, InetSocketAddress) opens an active connection and sends its first command
+    private static void connect(Selector selector, InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+        channel.configureBlocking(false);
+        Conn conn = new Conn();
+        channel.register(selector, SelectionKey.OP_READ, conn);
+        send(channel, conn);
+    }
+
+    // send(SocketChannel, Conn) sends the connection's next command line
+    private static void send(SocketChannel channel, Conn conn) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < batch; i++) {
+            line.append(i == 0 ? "" : " ").append(COMMANDS[conn.next]);
+            conn.next = conn.next + 1 < COMMANDS.length ? conn.next + 1 : 1;
+        }
+        line.append('\n');
+        ByteBuffer buf = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.US_ASCII));
+        conn.sentAt = System.nanoTime();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    // countMarkers(Conn) counts the response end marker lines received so far
+    private static int countMarkers(Conn conn) {
+        ByteBuffer in = conn.in;
+        for (int i = conn.scanned; i < in.position(); i++) {
+            if (in.get(i) == '\n') {
+                if (i - conn.lineStart == 1 && in.get(conn.lineStart) == '.') {
+                    conn.markers += 1;
+                }
+                conn.lineStart = i + 1;
+            }
+        }
+        conn.scanned = in.position();
+        return conn.markers;
+    }
+}
@@ -1,14 +1,64 @@
-// map class, contains 2d char array for map representation, map name and gold required to win current map
-import java.io.*;
-import java.util.ArrayList;
+// map class, contains the tiles of the map, map name and gold required to win current map
+import java.io.IOException;
 
 /*
  * Reads and contains in memory the map of the game.
  */
 public class Map {
 
-    /* Representation of the map */
-    private char[][] map;
+    /* Terrain of the map, one byte per tile, in memory or in chunks loaded from disk */
+    private TileStore tiles;
+
+    /* Number of rows and columns of the map */
+    private int height;
+    private int width;
+
+    /* Players and bots standing on the map, drawn over the terrain */
+    private OccupancyLayer occupants = new OccupancyLayer();
+
+    /* Listeners told about terrain changes, null until the first is added */
+    private java.util.ArrayList<MapListener> listeners;
+
+    /* One bit per tile, set when a player or bot stands on it, so most lookups skip the occupancy layer
+     * (null for chunked maps, which are too large for it, and for forks, which should not pay to copy it -
+     * their lookups check the occupancy layer instead) */
+    private long[] occupied;
+
+    /* Count of changes made to the map, and the count at the last change of each row
+     * (null until a version is first asked for, see getRowVersion()) */
+    private long version;
+    private long[] rowVersions;
+
+    /* Tiles inside the border whose terrain players and bots can spawn on ('.' and 'E'), built when first needed
+     * (never for chunked maps, which are too large for it); copies and overlays start from a copy of the index
+     * of the map they copy, which shares its arrays until either side changes */
+    private FreeCellIndex freeCells;
+
+    /* Count of those tiles per chunk of a chunked map instead, built the first time a tile is picked */
+    private FreeChunkIndex freeChunks;
+
+    /* Set once the map is the template of overlays (see overlay()), after which its terrain cannot change */
+    private volatile boolean frozen;
+
+    /* Indexes of the gold and exit tiles, built when first asked for */
+    private SpatialIndex goldIndex;
+    private SpatialIndex exitIndex;
+
+    /* Template whose terrain this map reads through its overlay (see overlay()), carried over to copies and forks
+     * of the overlay; null if the map is not an overlay */
+    private Map template;
+
+    /* Positions (y * width + x) of the gold and exit tiles as read from a compiled map, so the indexes can be
+     * built without a scan; dropped once the terrain changes */
+    private int[] goldTiles;
+    private int[] exitTiles;
+
+    /* Connected areas of the map with their gold and exits, built when first needed,
+     * dropped when a tile turns into or stops being a wall */
+    private MapAnalysis analysis;
+
+    /* Rows of the map file that were padded or cut to the width of the first row */
+    private int raggedRows;
 
     /* Map name */
     private String mapName;
@@ -21,7 +71,7 @@ public class Map {
     public Map() {
         mapName = "Very small Labyrinth of Doom";
         goldRequired = 2;
-        map = new char[][]{
+        setTiles(new char[][]{
                 {'#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#'},
                 {'#','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','#'},
                 {'#','.','.','.','.','.','.','G','.','.','.','.','.','.','.','.','.','E','.','#'},
@@ -31,7 +81,99 @@ public class Map {
                 {'#','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','#'},
                 {'#','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','.','#'},
                 {'#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#','#'}
-        };
+        });
+    }
+
+    // Copy constructor, creates an independent copy of another map
+    // used when many games are played on the same map at once
+    public Map(Map other) {
+        mapName = other.mapName;
+        goldRequired = other.goldRequired;
+        height = other.height;
+        width = other.width;
+        tiles = other.tiles.copy();
+        occupants = new OccupancyLayer(other.occupants);
+        occupied = other.occupied == null ? null : other.occupied.clone();
+        goldTiles = other.goldTiles;
+        exitTiles = other.exitTiles;
+        analysis = other.analysis;
+        raggedRows = other.raggedRows;
+        template = other.template;
+        // the index is built once on the map being copied, every copy shares it until it changes
+        synchronized (other) {
+            FreeCellIndex index = other.freeCells();
+            freeCells = index == null ? null : index.copy();
+        }
+    }
+
+    // fork() returns a copy of the map, players and bots included, that shares unchanged terrain rows with this map
+    // the first fork switches this map to copy-on-write rows, after which a fork costs one reference per row
+    // and each side copies a row the first time it changes it
+    // overlays fork by copying their changes, and a template forks into a new overlay
+    // listeners and row versions are not carried over to the fork
+    // @return : the fork
+    // @throws : UnsupportedOperationException for chunked maps
+    public Map fork() {
+        if (frozen) {
+            return overlay();
+        }
+        if (tiles instanceof ArrayTileStore) {
+            tiles = new CowTileStore(((ArrayTileStore) tiles).array(), height, width);
+        } else if (tiles instanceof ChunkedTileStore) {
+            throw new UnsupportedOperationException("Chunked maps cannot be forked");
+        }
+        Map fork = new Map(mapName, goldRequired, height, width, tiles.copy());
+        fork.occupants = new OccupancyLayer(occupants);
+        fork.version = version;
+        fork.freeCells = freeCells == null ? null : freeCells.copy();
+        fork.goldTiles = goldTiles;
+        fork.exitTiles = exitTiles;
+        fork.analysis = analysis;
+        fork.raggedRows = raggedRows;
+        fork.template = template;
+        return fork;
+    }
+
+    // overlay() returns a map for one game played on this map as a template, without copying the terrain:
+    // the overlay reads this map's terrain and keeps only its own changes (see OverlayTileStore), its players and
+    // bots are looked up in its occupancy layer and spawns are drawn from a copy of this map's index of free tiles
+    // that shares its arrays until the overlay's terrain changes,
+    // so an overlay costs memory for what changes in its game rather than for the size of the map
+    // this map becomes a template and its terrain cannot be changed from now on; several threads may
+    // create overlays of it at once
+    // @return : the overlay
+    // @throws : UnsupportedOperationException for chunked maps
+    public Map overlay() {
+        if (tiles instanceof ChunkedTileStore) {
+            throw new UnsupportedOperationException("Chunked maps cannot be overlaid");
+        }
+        Map overlay = new Map(mapName, goldRequired, height, width, new OverlayTileStore(tiles, width));
+        synchronized (this) {
+            freeze();
+            overlay.occupants = new OccupancyLayer(occupants);
+            overlay.version = version;
+            overlay.freeCells = freeCells().copy();
+        }
+        overlay.goldTiles = goldTiles;
+        overlay.exitTiles = exitTiles;
+        overlay.analysis = analysis;
+        overlay.raggedRows = raggedRows;
+        overlay.template = this;
+        return overlay;
+    }
+
+    // freeze() makes the map a template, its terrain cannot be changed from now on
+    // the index of free tiles and the analysis overlays share are built here, so creating overlays later
+    // only reads the map
+    public synchronized void freeze() {
+        frozen = true;
+        freeCells();
+        getAnalysis();
+    }
+
+    // isTemplate() returns if the map is the template of overlays, and so cannot have its terrain changed
+    public boolean isTemplate() {
+        return frozen;
     }
 
     // Constructor that accepts a map to read in from.
@@ -39,47 +181,66 @@ public class Map {
         readMap(fileLocation);
     }
 
+    // Constructor from already parsed parts, used by the map loaders
+    // @param : map name, gold required, number of rows and columns, terrain storage
+    Map(String mapName, int goldRequired, int height, int width, TileStore tiles) {
+        this.mapName = mapName;
+        this.goldRequired = goldRequired;
+        this.height = height;
+        this.width = width;
+        this.tiles = tiles;
+        if (tiles instanceof ArrayTileStore) {
+            occupied = new long[(height * width + 63) >>> 6];
+        }
+    }
+
+    // setTileTables(int[], int[]) gives the map the positions of its gold and exit tiles, read by CompiledMap
+    // @param : positions (y * width + x) of every gold tile and every exit tile, not changed afterwards
+    void setTileTables(int[] gold, int[] exits) {
+        goldTiles = gold;
+        exitTiles = exits;
+    }
+
+    // openChunked(String, int, int) opens a map too large to hold in memory
+    // tiles are loaded from the file in square chunks when first used and the least recently used chunks
+    // are written back and dropped once more than maxChunks are loaded
+    // the file is changed in place when tiles change, call close() when the game is over
+    // @param : file location of map, chunk side length in tiles and maximum chunks held in memory
+    // @return : the opened map
+    // @throws : IOException if the file cannot be opened or its rows are not all the same length
+    public static Map openChunked(String fileLocation, int chunkSize, int maxChunks) throws IOException {
+        return MapLoader.openChunked(fileLocation, chunkSize, maxChunks);
+    }
+
+    // flush() writes any changed tiles of a chunked map back to its file
+    // @throws : IOException if writing fails
+    public void flush() throws IOException {
+        tiles.flush();
+    }
+
+    // close() writes back any changed tiles and closes the file of a chunked map
+    // @throws : IOException if writing or closing fails
+    public void close() throws IOException {
+        tiles.close();
+    }
+
     // readMap(string) reads a map from specified string file location and sets up the map
+    // the file is memory-mapped and parsed straight into the terrain by MapLoader, as text or as a CompiledMap
     // @param : file location of map
     public void readMap(String fileLocation) {
-        String line;
-        ArrayList<String> tempMap = new ArrayList<>();
-        // reads each line of the text file
-        try (BufferedReader br = new BufferedReader(new FileReader(fileLocation))) {
-            // loop as long as end of the file has not yet been reached
-            while ((line = br.readLine()) != null) {
-                // if first character of the line is a wall '#', add line to temporary string map - tempMap
-                if (line.charAt(0) == '#') {
-                    tempMap.add(line);
-                    // if first character of the line is 'n' then trim the first 5 characters of the line
-                    // to get rid of text "name ", then assign the rest (name of the map) to mapName
-                } else if (line.charAt(0) == 'n') {
-                    mapName = (line.substring(5)).trim();
-                    System.out.println(mapName);
-                    // if first character of the line is 'w' then trim the first 4 characters of the line
-                    // to get rid of the text 'win ', then convert the rest (number of gold to win) to integer
-                    // then assign to goldRequired
-                } else if (line.charAt(0) == 'w') {
-                    String gr = (line.substring(4)).trim();
-                    goldRequired = Integer.parseInt(gr);
-                }
-            }
-            // close BufferedReader
-            br.close();
-
-            // create a new map as a 2d character array with the size of the temporary string map read from text file
-            int rows = tempMap.size();
-            int cols = tempMap.get(0).length();
-            map = new char[rows][cols];
-            // loop through rows
-            for (int i = 0; i < rows; i++) {
-                // loop through columns of each row
-                for (int j = 0; j < cols; j++) {
-                    // each character from the temporary string map is read and added to the map
-                    char tile = tempMap.get(i).charAt(j);
-                    map[i][j] = tile;
-                }
-            }
+        try {
+            Map loaded = MapLoader.load(fileLocation);
+            mapName = loaded.mapName;
+            goldRequired = loaded.goldRequired;
+            height = loaded.height;
+            width = loaded.width;
+            tiles = loaded.tiles;
+            occupied = loaded.occupied;
+            goldTiles = loaded.goldTiles;
+            exitTiles = loaded.exitTiles;
+            raggedRows = loaded.raggedRows;
+            occupants = new OccupancyLayer();
+            System.out.println(mapName);
             // in the case where a map has failed to load: either not found or other errors
             // the default map is loaded, message is displayed here
         } catch (IOException e) {
@@ -88,11 +249,45 @@ public class Map {
 
     }
 
+    // setTiles(char[][]) packs a 2d character array into the terrain
+    // @param : rows of the map, all of the same length
+    private void setTiles(char[][] grid) {
+        height = grid.length;
+        width = grid[0].length;
+        byte[] packed = new byte[height * width];
+        occupied = new long[(height * width + 63) >>> 6];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                packed[i * width + j] = (byte) grid[i][j];
+            }
+        }
+        tiles = new ArrayTileStore(packed, width);
+    }
+
+    // isEntity(char) returns if a character is the indicator of a player or bot rather than a terrain tile
+    // @param : character to check
+    // @return : true for 'P' and 'B'
+    public static boolean isEntity(char c) {
+        return c == 'P' || c == 'B';
+    }
+
     // ACCESSORS
     // getMapSize() returns the size of the map (Y x X) - border inclusive
     // @return : the integer size of the map
     public int[] getMapSize() {
-        return new int[]{map.length, map[0].length};
+        return new int[]{height, width};
+    }
+
+    // getHeight() returns the number of rows of the map - border inclusive
+    // @return : number of rows
+    public int getHeight() {
+        return height;
+    }
+
+    // getWidth() returns the number of columns of the map - border inclusive
+    // @return : number of columns
+    public int getWidth() {
+        return width;
     }
 
     // canSpawn(x,y) returns boolean value of if a player or bot can spawn at given coordinates at the start of the game
@@ -100,7 +295,180 @@ public class Map {
     // @return : boolean value of whether the player is allowed to at specified coordinates
     public Boolean canSpawn(int y, int x) {
         // return true if the tile to be spawned on is empty or an exit, otherwise false
-        return (map[y][x] == '.') || (map[y][x] == 'E');
+        char tile = getTile(y, x);
+        return (tile == '.') || (tile == 'E');
+    }
+
+    // getAnalysis() returns the connected areas of the map with their gold and exits, analysing the map
+    // the first time (in parallel for large maps), shared with copies, forks and overlays
+    // @return : the analysis
+    public MapAnalysis getAnalysis() {
+        MapAnalysis current = analysis;
+        if (current == null) {
+            current = MapAnalysis.analyze(this);
+            analysis = current;
+        }
+        return current;
+    }
+
+    // isReachable(int, int, int, int) returns if one tile can be walked to from another, ignoring players and bots
+    // @param : y and x coordinates of both tiles
+    // @return : true if both are walkable and connected
+    public boolean isReachable(int y1, int x1, int y2, int x2) {
+        return getAnalysis().isReachable(y1, x1, y2, x2);
+    }
+
+    // getRaggedRows() returns the rows of the map file that were padded or cut to the width of the first row
+    public int getRaggedRows() {
+        return raggedRows;
+    }
+
+    // setRaggedRows(int) records the rows the loader padded or cut
+    void setRaggedRows(int rows) {
+        raggedRows = rows;
+    }
+
+    // getGoldIndex() returns the index of gold tiles for nearest and within-radius queries, kept current as gold
+    // is picked up; built the first time, and not carried over to copies: an overlay (or a copy of one) builds it
+    // over its template's index, which is built once and shared, from the tiles the overlay has changed, and other
+    // maps by one scan of the map (or from the gold table of a compiled map)
+    // the search bots (see MctsPlanner) score their playouts with it
+    // @return : the gold index
+    // @throws : IllegalArgumentException if the map is too large to index
+    public SpatialIndex getGoldIndex() {
+        if (goldIndex == null) {
+            goldIndex = buildIndex('G', goldTiles);
+        }
+        return goldIndex;
+    }
+
+    // getExitIndex() returns the index of exit tiles, see getGoldIndex()
+    // @return : the exit index
+    // @throws : IllegalArgumentException if the map is too large to index
+    public SpatialIndex getExitIndex() {
+        if (exitIndex == null) {
+            exitIndex = buildIndex('E', exitTiles);
+        }
+        return exitIndex;
+    }
+
+    // buildIndex(char, int[]) builds the index of a kind of tile, see getGoldIndex()
+    // @param : the tile and the positions of those tiles from a compiled map, null if not known
+    private SpatialIndex buildIndex(char kind, int[] positions) {
+        if (template != null) {
+            SpatialIndex shared;
+            // overlays played on other threads may ask for the template's index at the same time
+            synchronized (template) {
+                shared = kind == 'G' ? template.getGoldIndex() : template.getExitIndex();
+            }
+            return new SpatialIndex(this, shared, ((OverlayTileStore) tiles).changedCells());
+        }
+        return positions == null ? new SpatialIndex(this, kind, 16) : new SpatialIndex(this, kind, 16, positions);
+    }
+
+    // randomFreeTile(Random) picks a tile inside the border that a player or bot can spawn on, with equal chance
+    // for every such tile no one stands on: one draw from the index of spawnable tiles and, only if that tile is
+    // occupied, one draw among the others, stepping over the few occupied ones
+    // in-memory maps list their spawnable tiles; chunked maps, too large for that, count them per chunk
+    // (see FreeChunkIndex), reading the whole map once the first time a tile is picked
+    // @param : random number generator to draw with
+    // @return : coordinates (y,x) of the tile, or null if there is no free tile
+    public int[] randomFreeTile(java.util.Random rand) {
+        if (height < 3 || width < 3) {
+            return null;
+        }
+        FreeCellIndex index = freeCells();
+        if (index == null) {
+            return randomFreeChunkTile(rand);
+        }
+        int size = index.size();
+        if (size == 0) {
+            return null;
+        }
+        int cell = index.get(rand.nextInt(size));
+        if (!isOccupied(cell / width, cell % width)) {
+            return new int[]{cell / width, cell % width};
+        }
+        // positions in the index of the occupied spawnable tiles, in order
+        long[] entities = occupants.cells();
+        int[] taken = new int[entities.length];
+        int count = 0;
+        for (long entity : entities) {
+            int position = index.position((int) entity);
+            if (position >= 0) {
+                taken[count++] = position;
+            }
+        }
+        if (count == size) {
+            return null;
+        }
+        java.util.Arrays.sort(taken, 0, count);
+        int position = rand.nextInt(size - count);
+        for (int i = 0; i < count && taken[i] <= position; i++) {
+            position += 1;
+        }
+        cell = index.get(position);
+        return new int[]{cell / width, cell % width};
+    }
+
+    // randomFreeChunkTile(Random) picks a free tile of a chunked map, see randomFreeTile(Random)
+    private int[] randomFreeChunkTile(java.util.Random rand) {
+        if (freeChunks == null) {
+            freeChunks = new FreeChunkIndex(tiles, height, width, ((ChunkedTileStore) tiles).getChunkSize());
+        }
+        long size = freeChunks.size();
+        if (size == 0) {
+            return null;
+        }
+        int[] tile = freeChunks.get(rand.nextLong(size));
+        if (!isOccupied(tile[0], tile[1])) {
+            return tile;
+        }
+        // ranks of the occupied spawnable tiles, in order
+        long[] entities = occupants.cells();
+        long[] taken = new long[entities.length];
+        int count = 0;
+        for (long entity : entities) {
+            long rank = freeChunks.rank((int) (entity / width), (int) (entity % width));
+            if (rank >= 0) {
+                taken[count++] = rank;
+            }
+        }
+        if (count == size) {
+            return null;
+        }
+        java.util.Arrays.sort(taken, 0, count);
+        long rank = rand.nextLong(size - count);
+        for (int i = 0; i < count && taken[i] <= rank; i++) {
+            rank += 1;
+        }
+        return freeChunks.get(rank);
+    }
+
+    // freeCells() returns the index of spawnable tiles, building it the first time
+    // @return : the index, or null for chunked maps
+    private FreeCellIndex freeCells() {
+        if (freeCells == null && !(tiles instanceof ChunkedTileStore)) {
+            int[] cells = new int[64];
+            int count = 0;
+            for (int y = 1; y < height - 1; y++) {
+                for (int x = 1; x < width - 1; x++) {
+                    if (isSpawnTerrain(tiles.get(y, x))) {
+                        if (count == cells.length) {
+                            cells = java.util.Arrays.copyOf(cells, count * 2);
+                        }
+                        cells[count++] = y * width + x;
+                    }
+                }
+            }
+            freeCells = new FreeCellIndex(java.util.Arrays.copyOf(cells, count));
+        }
+        return freeCells;
+    }
+
+    // isSpawnTerrain(byte) returns if players and bots can spawn on a terrain
+    static boolean isSpawnTerrain(byte tile) {
+        return tile == '.' || tile == 'E';
     }
 
     // getGoldRequired() returns the total gold required for winning the map
@@ -127,10 +495,83 @@ public class Map {
     */
 
     // getTile(y, x) returns the tile of chosen coordinates on the map as a character
+    // a player or bot standing on the tile is returned instead of the terrain
     // @param : integer values of y and x coordinates
     // @return : a character of the tile at specified coordinates
     public char getTile(int y, int x) {
-        return map[y][x];
+        if (isOccupied(y, x)) {
+            return occupants.get((long) y * width + x);
+        }
+        return (char) tiles.get(y, x);
+    }
+
+    // fillView(Viewport, y, x) fills a viewport with the tiles around chosen coordinates,
+    // players and bots shown over the terrain and anything outside the map shown as a wall '#'
+    // windows fully inside an in-memory map are copied straight from the terrain array without bounds checks
+    // @param : the viewport to fill and the y and x coordinates of its centre
+    public void fillView(Viewport view, int cy, int cx) {
+        char[] cells = view.cells();
+        int radius = view.getRadius();
+        int side = view.getSide();
+        int y0 = cy - radius;
+        int x0 = cx - radius;
+        view.setCentre(cy, cx);
+        boolean inside = y0 >= 0 && x0 >= 0 && y0 + side <= height && x0 + side <= width;
+        if (inside && tiles instanceof ArrayTileStore) {
+            byte[] terrain = ((ArrayTileStore) tiles).array();
+            for (int row = 0; row < side; row++) {
+                int cell = (y0 + row) * width + x0;
+                int out = row * side;
+                for (int col = 0; col < side; col++, cell++) {
+                    if ((occupied[cell >>> 6] & (1L << cell)) != 0) {
+                        cells[out + col] = occupants.get(cell);
+                    } else {
+                        cells[out + col] = (char) terrain[cell];
+                    }
+                }
+            }
+            return;
+        }
+        if (inside && tiles instanceof CowTileStore) {
+            CowTileStore rows = (CowTileStore) tiles;
+            boolean anyone = occupants.size() != 0;
+            for (int row = 0; row < side; row++) {
+                byte[] terrain = rows.row(y0 + row);
+                long cell = (long) (y0 + row) * width + x0;
+                int out = row * side;
+                for (int col = 0; col < side; col++, cell++) {
+                    char entity = anyone ? occupants.get(cell) : 0;
+                    cells[out + col] = entity != 0 ? entity : (char) terrain[x0 + col];
+                }
+            }
+            return;
+        }
+        for (int row = 0; row < side; row++) {
+            int y = y0 + row;
+            for (int col = 0; col < side; col++) {
+                int x = x0 + col;
+                boolean outside = y < 0 || x < 0 || y >= height || x >= width;
+                cells[row * side + col] = outside ? '#' : getTile(y, x);
+            }
+        }
+    }
+
+    // getTerrain(y, x) returns the terrain of chosen coordinates, ignoring any player or bot standing on it
+    // @param : integer values of y and x coordinates
+    // @return : a character of the terrain at specified coordinates
+    public char getTerrain(int y, int x) {
+        return (char) tiles.get(y, x);
+    }
+
+    // isOccupied(y, x) returns if a player or bot is standing on chosen coordinates
+    // @param : integer values of y and x coordinates
+    // @return : true if the tile is occupied
+    public boolean isOccupied(int y, int x) {
+        if (occupied == null) {
+            return occupants.size() != 0 && occupants.get((long) y * width + x) != 0;
+        }
+        int cell = y * width + x;
+        return (occupied[cell >>> 6] & (1L << cell)) != 0;
     }
 
     // getMapName() returns the name of the map as a string
@@ -142,9 +583,150 @@ public class Map {
     // MUTATORS
     // setMap() sets the tile of a chosen coordinate on the map to a specified character
     // (used when a player/bot is spawned or moved, or a gold coin is collected)
+    // player and bot indicators are placed over the terrain, any other character replaces the terrain
+    // and clears the tile of players
     // @param : integer coordinates y, x and a character indicating the entity
     public void setMap(int y, int x, char entity) {
-        map[y][x] = entity;
+        if (isEntity(entity)) {
+            placeEntity(y, x, entity);
+        } else {
+            setTerrain(y, x, entity);
+            removeEntity(y, x);
+        }
+    }
+
+    // setTerrain() sets the terrain of a chosen coordinate, leaving any player or bot on it in place
+    // listeners are told about the change if the terrain is different
+    // @param : integer coordinates y, x and the terrain character
+    // @throws : IllegalStateException if the map is a template, see overlay()
+    public void setTerrain(int y, int x, char tile) {
+        char old = (char) tiles.get(y, x);
+        if (old == tile) {
+            return;
+        }
+        if (frozen) {
+            throw new IllegalStateException("The terrain of a template map cannot be changed, change an overlay");
+        }
+        tiles.set(y, x, (byte) tile);
+        changed(y);
+        goldTiles = null;
+        exitTiles = null;
+        if ((old == '#') != (tile == '#')) {
+            analysis = null;
+        }
+        boolean spawnable = isSpawnTerrain((byte) tile);
+        if (spawnable != isSpawnTerrain((byte) old) && y > 0 && x > 0 && y < height - 1 && x < width - 1) {
+            if (freeCells != null) {
+                if (spawnable) {
+                    freeCells.add(y * width + x);
+                } else {
+                    freeCells.remove(y * width + x);
+                }
+            } else if (freeChunks != null) {
+                if (spawnable) {
+                    freeChunks.add(y, x);
+                } else {
+                    freeChunks.remove(y, x);
+                }
+            }
+        }
+        if (listeners != null) {
+            for (MapListener listener : listeners) {
+                listener.terrainChanged(y, x, old, tile);
+            }
         }
+    }
+
+    // addListener(MapListener) registers a listener to be told about terrain changes
+    // listeners are not carried over to copies of the map
+    // @param : the listener
+    public void addListener(MapListener listener) {
+        if (listeners == null) {
+            listeners = new java.util.ArrayList<>();
+        }
+        listeners.add(listener);
+    }
+
+    // removeListener(MapListener) stops telling a listener about terrain changes
+    // @param : the listener
+    public void removeListener(MapListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    // placeEntity() places a player or bot indicator on a chosen coordinate
+    // several players and bots may stand on the same tile, a bot is shown over a player
+    // @param : integer coordinates y, x and the indicator of the entity
+    public void placeEntity(int y, int x, char indicator) {
+        occupants.put((long) y * width + x, indicator);
+        changed(y);
+        if (occupied != null) {
+            int cell = y * width + x;
+            occupied[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    // removeEntity(y, x, char) takes one player or bot off a chosen coordinate
+    // @param : integer coordinates y, x and the indicator of the entity
+    public void removeEntity(int y, int x, char indicator) {
+        if (isOccupied(y, x)) {
+            long cell = (long) y * width + x;
+            occupants.remove(cell, indicator);
+            changed(y);
+            if (occupied != null && occupants.get(cell) == 0) {
+                occupied[(int) cell >>> 6] &= ~(1L << cell);
+            }
+        }
+    }
+
+    // countEntities(y, x, char) returns how many players or bots stand on a chosen coordinate
+    // @param : integer coordinates y, x and the indicator of the kind of entity ('P' or 'B')
+    // @return : number of entities of that kind on the tile
+    public int countEntities(int y, int x, char indicator) {
+        if (!isOccupied(y, x)) {
+            return 0;
+        }
+        return occupants.count((long) y * width + x, indicator);
+    }
+
+    // removeEntity() removes every player and bot indicator from a chosen coordinate
+    // @param : integer coordinates y, x
+    public void removeEntity(int y, int x) {
+        if (isOccupied(y, x)) {
+            occupants.remove((long) y * width + x);
+            changed(y);
+            if (occupied != null) {
+                int cell = y * width + x;
+                occupied[cell >>> 6] &= ~(1L << cell);
+            }
+        }
+    }
+
+    // getVersion() returns the number of changes made to the map's tiles and players so far
+    // @return : the current version of the map
+    public long getVersion() {
+        return version;
+    }
+
+    // getRowVersion(int) returns the version of the map at the last change to a row
+    // rows are only tracked from the first call, earlier changes count as made at the current version
+    // @param : the row
+    // @return : the version at the row's last change, never more than getVersion()
+    public long getRowVersion(int y) {
+        if (rowVersions == null) {
+            rowVersions = new long[height];
+            java.util.Arrays.fill(rowVersions, version);
+        }
+        return rowVersions[y];
+    }
+
+    // changed(int) records a change to a row
+    private void changed(int y) {
+        version += 1;
+        if (rowVersions != null) {
+            rowVersions[y] = version;
+        }
+    }
 
 }
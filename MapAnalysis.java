@@ -0,0 +1,297 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+// connected areas of a map's walkable tiles (anything but a wall '#', moving north, south, east or west), with the
+// gold, exits and spawn tiles in each, to check a map can be won and to answer "can this tile be reached from that
+// one" with two array reads
+// built with union-find over strips of rows: the strips are joined up in parallel, then joined to each other along
+// their edges, then every tile is pointed straight at the root of its area in parallel again
+// a snapshot of the terrain when it was analysed; Map drops it when a tile turns into or stops being a wall,
+// but not when gold is picked up, so the gold counts are those of the map as it was analysed
+public final class MapAnalysis {
+    // value of a wall in the label array
+    private static final int WALL = Integer.MIN_VALUE;
+    // fewest rows in a strip, smaller maps are analysed on the calling thread
+    private static final int MIN_STRIP_ROWS = 256;
+
+    // number of rows and columns of the map
+    private final int height;
+    private final int width;
+    // for each tile (y * width + x): WALL, -(area + 1) for the first tile of an area,
+    // or the tile number of the first tile of its area for any other tile
+    private final int[] labels;
+    // number of areas, and the gold, exits and spawn tiles of each
+    private final int areas;
+    private final int[] gold;
+    private final int[] exits;
+    private final int[] spawns;
+    // gold needed to win the map
+    private final int goldRequired;
+    // spawn tiles from which the map can be won, and all spawn tiles
+    private final long winnableSpawns;
+    private final long totalSpawns;
+    // rows the loader had to pad or cut to the width of the first row
+    private final int raggedRows;
+
+    // analyze(Map) analyses a map, in parallel over strips of rows if it is large
+    // @param : the map
+    // @return : the analysis
+    public static MapAnalysis analyze(Map map) {
+        int strips = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4,
+                map.getHeight() / MIN_STRIP_ROWS));
+        return new MapAnalysis(map, strips);
+    }
+
+    // Constructor - analyses a map
+    // @param : the map and the number of strips of rows to split it into
+    MapAnalysis(Map map, int strips) {
+        height = map.getHeight();
+        width = map.getWidth();
+        goldRequired = map.getGoldRequired();
+        raggedRows = map.getRaggedRows();
+        if ((long) height * width > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Map too large to analyse: " + height + "x" + width);
+        }
+        labels = new int[height * width];
+        int stripRows = (height + strips - 1) / strips;
+        int stripCount = (height + stripRows - 1) / stripRows;
+
+        // join up the tiles of each strip, every strip only writes its own tiles
+        parallel(stripCount, s -> joinStrip(map, s * stripRows, Math.min(height, (s + 1) * stripRows)));
+        // join the strips along their edges
+        for (int s = 1; s < stripCount; s++) {
+            int y = s * stripRows;
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                if (labels[cell] != WALL && labels[cell - width] != WALL) {
+                    union(cell, cell - width);
+                }
+            }
+        }
+        // point every tile straight at its root; finds only read, and each strip only writes its own tiles,
+        // so a tile read part way through is always an ancestor of the one it replaced
+        parallel(stripCount, s -> {
+            for (int cell = s * stripRows * width; cell < Math.min(height, (s + 1) * stripRows) * width; cell++) {
+                if (labels[cell] != WALL) {
+                    labels[cell] = root(cell);
+                }
+            }
+        });
+        // number the areas, strip by strip in order
+        int[] firstArea = new int[stripCount + 1];
+        parallel(stripCount, s -> {
+            int count = 0;
+            for (int cell = s * stripRows * width; cell < Math.min(height, (s + 1) * stripRows) * width; cell++) {
+                if (labels[cell] == cell) {
+                    count += 1;
+                }
+            }
+            firstArea[s + 1] = count;
+        });
+        for (int s = 0; s < stripCount; s++) {
+            firstArea[s + 1] += firstArea[s];
+        }
+        areas = firstArea[stripCount];
+        parallel(stripCount, s -> {
+            int area = firstArea[s];
+            for (int cell = s * stripRows * width; cell < Math.min(height, (s + 1) * stripRows) * width; cell++) {
+                if (labels[cell] == cell) {
+                    labels[cell] = -(area++ + 1);
+                }
+            }
+        });
+        // count the gold, exits and spawn tiles (inside the border) of each area
+        AtomicIntegerArray goldCounts = new AtomicIntegerArray(areas);
+        AtomicIntegerArray exitCounts = new AtomicIntegerArray(areas);
+        AtomicIntegerArray spawnCounts = new AtomicIntegerArray(areas);
+        parallel(stripCount, s -> {
+            for (int y = s * stripRows; y < Math.min(height, (s + 1) * stripRows); y++) {
+                for (int x = 0; x < width; x++) {
+                    char tile = map.getTerrain(y, x);
+                    if (tile == '#') {
+                        continue;
+                    }
+                    int area = area(y * width + x);
+                    if (tile == 'G') {
+                        goldCounts.incrementAndGet(area);
+                    } else if (tile == 'E') {
+                        exitCounts.incrementAndGet(area);
+                    }
+                    if ((tile == '.' || tile == 'E') && y > 0 && x > 0 && y < height - 1 && x < width - 1) {
+                        spawnCounts.incrementAndGet(area);
+                    }
+                }
+            }
+        });
+        gold = new int[areas];
+        exits = new int[areas];
+        spawns = new int[areas];
+        long winnable = 0;
+        long total = 0;
+        for (int area = 0; area < areas; area++) {
+            gold[area] = goldCounts.get(area);
+            exits[area] = exitCounts.get(area);
+            spawns[area] = spawnCounts.get(area);
+            total += spawns[area];
+            if (canWin(area)) {
+                winnable += spawns[area];
+            }
+        }
+        winnableSpawns = winnable;
+        totalSpawns = total;
+    }
+
+    // joinStrip(Map, int, int) marks the walls of a strip of rows and joins each walkable tile
+    // to the walkable tiles west and north of it within the strip
+    private void joinStrip(Map map, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = y * width + x;
+                if (map.getTerrain(y, x) == '#') {
+                    labels[cell] = WALL;
+                    continue;
+                }
+                labels[cell] = cell;
+                if (x > 0 && labels[cell - 1] != WALL) {
+                    union(cell, cell - 1);
+                }
+                if (y > y0 && labels[cell - width] != WALL) {
+                    union(cell, cell - width);
+                }
+            }
+        }
+    }
+
+    // union(int, int) joins the areas of two tiles, the root with the higher tile number is linked below the other
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra < rb) {
+            labels[rb] = ra;
+        } else if (rb < ra) {
+            labels[ra] = rb;
+        }
+    }
+
+    // find(int) returns the root of a tile while joining, halving the path to it on the way
+    private int find(int cell) {
+        while (labels[cell] != cell) {
+            labels[cell] = labels[labels[cell]];
+            cell = labels[cell];
+        }
+        return cell;
+    }
+
+    // root(int) returns the root of a tile without changing anything on the way
+    private int root(int cell) {
+        int parent = labels[cell];
+        while (parent != cell) {
+            cell = parent;
+            parent = labels[cell];
+        }
+        return cell;
+    }
+
+    // parallel(int, IntConsumer) runs a task for every strip, on the common fork-join pool if there are several
+    private static void parallel(int strips, java.util.function.IntConsumer task) {
+        if (strips == 1) {
+            task.accept(0);
+        } else {
+            IntStream.range(0, strips).parallel().forEach(task);
+        }
+    }
+
+    // area(int) returns the area of a walkable tile
+    private int area(int cell) {
+        int label = labels[cell];
+        if (label >= 0) {
+            label = labels[label];
+        }
+        return -label - 1;
+    }
+
+    // areaAt(int, int) returns the area of a tile
+    // @param : y and x coordinates
+    // @return : number of the area, from 0 to getAreas() - 1, or -1 for a wall or a tile outside the map
+    public int areaAt(int y, int x) {
+        if (y < 0 || x < 0 || y >= height || x >= width || labels[y * width + x] == WALL) {
+            return -1;
+        }
+        return area(y * width + x);
+    }
+
+    // isReachable(int, int, int, int) returns if one tile can be walked to from another
+    // @param : y and x coordinates of both tiles
+    // @return : true if both are walkable and in the same area
+    public boolean isReachable(int y1, int x1, int y2, int x2) {
+        int area = areaAt(y1, x1);
+        return area >= 0 && area == areaAt(y2, x2);
+    }
+
+    // canWin(int) returns if a player in an area can collect enough gold and leave by an exit
+    private boolean canWin(int area) {
+        return gold[area] >= goldRequired && exits[area] > 0;
+    }
+
+    // getAreas() returns the number of separate walkable areas
+    public int getAreas() {
+        return areas;
+    }
+
+    // getGold(int) returns the gold in an area
+    public int getGold(int area) {
+        return gold[area];
+    }
+
+    // getExits(int) returns the exits in an area
+    public int getExits(int area) {
+        return exits[area];
+    }
+
+    // getSpawnTiles(int) returns the tiles of an area players and bots can spawn on
+    public int getSpawnTiles(int area) {
+        return spawns[area];
+    }
+
+    // getRaggedRows() returns the rows the loader padded or cut to the width of the first row
+    public int getRaggedRows() {
+        return raggedRows;
+    }
+
+    // canBeWon() returns if a player spawning somewhere on the map could win it
+    public boolean canBeWon() {
+        return winnableSpawns > 0;
+    }
+
+    // isWinnable() returns if a player could win from any spawn tile, so every game on the map can be won
+    public boolean isWinnable() {
+        return totalSpawns > 0 && winnableSpawns == totalSpawns;
+    }
+
+    // getProblems() describes whatever stops the map being winnable from every spawn tile, and ragged rows
+    // @return : one line per problem, empty for a good map
+    public List<String> getProblems() {
+        List<String> problems = new ArrayList<>();
+        if (raggedRows > 0) {
+            problems.add(raggedRows + " rows were not as wide as the first row and were padded or cut");
+        }
+        if (totalSpawns == 0) {
+            problems.add("no tile to spawn on");
+        } else if (winnableSpawns == 0) {
+            int best = 0;
+            for (int area = 0; area < areas; area++) {
+                if (exits[area] > 0) {
+                    best = Math.max(best, gold[area]);
+                }
+            }
+            problems.add("cannot be won: " + goldRequired + " gold needed, at most " + best
+                    + " reachable together with an exit");
+        } else if (winnableSpawns < totalSpawns) {
+            problems.add((totalSpawns - winnableSpawns) + " of " + totalSpawns
+                    + " spawn tiles cannot reach enough gold and an exit");
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// command line tool converting maps between the text format and the compiled format of CompiledMap
+// a text map is compiled, a compiled map is written back out as text
+public final class MapConverter {
+
+    private MapConverter() {
+    }
+
+    // writeText(Map, Path) writes the terrain of a map in the text format
+    // @param : the map and the file to write
+    // @throws : IOException if the file cannot be written
+    public static void writeText(Map map, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (map.getMapName() != null) {
+                out.write("name " + map.getMapName() + "\n");
+            }
+            out.write("win " + map.getGoldRequired() + "\n");
+            char[] row = new char[map.getWidth()];
+            for (int y = 0; y < map.getHeight(); y++) {
+                for (int x = 0; x < row.length; x++) {
+                    row[x] = map.getTerrain(y, x);
+                }
+                out.write(row);
+                out.write('\n');
+            }
+        }
+    }
+
+    // main method - converts one map file
+    // arguments: [input map file] [output map file]
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java MapConverter <input map> <output map>");
+            System.exit(2);
+        }
+        Path in = Path.of(args[0]);
+        Path out = Path.of(args[1]);
+        long start = System.nanoTime();
+        Map map = MapLoader.load(args[0]);
+        boolean compiled;
+        try (FileChannel channel = FileChannel.open(in)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            channel.read(magic, 0);
+            compiled = CompiledMap.isCompiled(magic, magic.position());
+        }
+        if (compiled) {
+            writeText(map, out);
+        } else {
+            CompiledMap.write(map, out);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s %dx%d: %d bytes -> %d bytes (%s), %.3fs%n", map.getMapName(), map.getHeight(),
+                map.getWidth(), Files.size(in), Files.size(out), compiled ? "text" : "compiled", seconds);
+    }
+}
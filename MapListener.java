@@ -0,0 +1,8 @@
+// interface for anything that keeps data derived from a map's terrain up to date
+// registered with Map.addListener(), called after every terrain change (e.g. gold picked up)
+public interface MapListener {
+
+    // terrainChanged(y, x, char, char) is called after the terrain of a tile has changed
+    // @param : y and x coordinates of the tile, its old and new terrain
+    void terrainChanged(int y, int x, char oldTile, char newTile);
+}
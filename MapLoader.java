@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// reads a map file by memory-mapping it and parsing it in a single pass
+// the '#' rows are copied in bulk straight from the mapped file into the map's terrain array,
+// so no String is created per line and the heap only holds the finished map
+// file format (same as always): "name <map name>", "win <gold>" and rows of tiles starting with '#',
+// blank lines and lines starting with anything else are ignored
+// files starting with the CompiledMap magic are read as compiled maps instead
+public final class MapLoader {
+
+    private MapLoader() {
+    }
+
+    // load(String) reads a map from a file
+    // rows shorter than the first row are padded with walls '#', longer rows are cut to its length
+    // @param : file location of the map
+    // @return : the loaded map
+    // @throws : IOException if the file cannot be read, is too large to map or has no rows
+    public static Map load(String fileLocation) throws IOException {
+        if (!Metrics.ENABLED) {
+            return read(fileLocation);
+        }
+        Metrics.MapLoadEvent event = Metrics.beginMapLoad();
+        Map map = null;
+        try {
+            map = read(fileLocation);
+            return map;
+        } finally {
+            Metrics.endMapLoad(event, fileLocation, map);
+        }
+    }
+
+    // read(String) reads a map from a file, see load()
+    private static Map read(String fileLocation) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileLocation), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Map file too large: " + size + " bytes");
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (CompiledMap.isCompiled(buf, (int) size)) {
+                return CompiledMap.read(buf, (int) size);
+            }
+            return parse(buf, (int) size);
+        }
+    }
+
+    // openChunked(String, int, int) opens a map file without reading its rows into memory
+    // only the header is read here, rows are loaded in chunks by a ChunkedTileStore when they are first used
+    // the name and win lines must come before the rows and all rows must have the same length
+    // @param : file location of the map, chunk side length in tiles and maximum chunks held in memory
+    // @return : the opened map, changes are written back to the file when chunks are evicted or flushed
+    // @throws : IOException if the file cannot be opened, is a compiled map or its rows are not all the same length
+    public static Map openChunked(String fileLocation, int chunkSize, int maxChunks) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileLocation),
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            HeaderReader in = new HeaderReader(channel);
+            if (in.size >= 4 && (in.byteAt(0) << 24 | (in.byteAt(1) & 0xFF) << 16 | (in.byteAt(2) & 0xFF) << 8
+                    | (in.byteAt(3) & 0xFF)) == CompiledMap.MAGIC) {
+                throw new IOException("Compiled maps cannot be opened in chunks, convert to text with MapConverter");
+            }
+            String mapName = null;
+            int goldRequired = 0;
+            long pos = 0;
+            while (pos < in.size && in.byteAt(pos) != '#') {
+                long end = in.lineEnd(pos);
+                byte first = in.byteAt(pos);
+                if (first == 'n') {
+                    mapName = new String(in.bytes(Math.min(pos + 5, end), end), StandardCharsets.UTF_8).trim();
+                } else if (first == 'w') {
+                    goldRequired = Integer.parseInt(
+                            new String(in.bytes(Math.min(pos + 4, end), end), StandardCharsets.UTF_8).trim());
+                }
+                pos = in.skipLineEnding(end);
+            }
+            if (pos >= in.size) {
+                throw new IOException("Map file has no rows");
+            }
+            long end = in.lineEnd(pos);
+            long width = end - pos;
+            long stride = in.skipLineEnding(end) - pos;
+            long separator = stride - width;
+            long data = in.size - pos;
+            // the last row may or may not have a line ending
+            long rows;
+            if (data % stride == 0) {
+                rows = data / stride;
+            } else if ((data + separator) % stride == 0) {
+                rows = (data + separator) / stride;
+            } else {
+                throw new IOException("Map rows must all be the same length to load in chunks");
+            }
+            if (rows > Integer.MAX_VALUE || width > Integer.MAX_VALUE) {
+                throw new IOException("Map too large: " + rows + "x" + width);
+            }
+            ChunkedTileStore store = new ChunkedTileStore(channel, pos, stride, (int) rows, (int) width,
+                    chunkSize, maxChunks);
+            return new Map(mapName, goldRequired, (int) rows, (int) width, store);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // reads single bytes from a file through a small buffer, used to find the header of a chunked map
+    private static final class HeaderReader {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+        // position in the file of the first byte in the buffer
+        private long blockStart = -1;
+
+        HeaderReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            size = channel.size();
+        }
+
+        // byteAt(long) returns the byte at a position, reading the block around it if needed
+        byte byteAt(long pos) throws IOException {
+            if (blockStart < 0 || pos < blockStart || pos >= blockStart + block.limit()) {
+                block.clear();
+                blockStart = pos;
+                while (block.hasRemaining() && channel.read(block, pos + block.position()) > 0) {
+                    // keep reading until the buffer is full or the file ends
+                }
+                block.flip();
+            }
+            return block.get((int) (pos - blockStart));
+        }
+
+        // lineEnd(long) returns the position of the '\r' or '\n' ending a line, or the file size
+        long lineEnd(long pos) throws IOException {
+            while (pos < size) {
+                byte b = byteAt(pos);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                pos += 1;
+            }
+            return pos;
+        }
+
+        // skipLineEnding(long) returns the position after the line ending at a position
+        long skipLineEnding(long pos) throws IOException {
+            if (pos < size && byteAt(pos) == '\r') {
+                pos += 1;
+            }
+            if (pos < size && byteAt(pos) == '\n') {
+                pos += 1;
+            }
+            return pos;
+        }
+
+        // bytes(long, long) returns the bytes between two positions of a header line
+        byte[] bytes(long from, long to) throws IOException {
+            byte[] out = new byte[(int) (to - from)];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = byteAt(from + i);
+            }
+            return out;
+        }
+    }
+
+    // parse(MappedByteBuffer, int) parses the whole mapped file
+    // @param : mapped file and its size in bytes
+    // @return : the parsed map
+    private static Map parse(MappedByteBuffer buf, int size) throws IOException {
+        String mapName = null;
+        int goldRequired = 0;
+        byte[] tiles = null;
+        int width = 0;
+        int rows = 0;
+        int ragged = 0;
+        int pos = 0;
+        while (pos < size) {
+            byte first = buf.get(pos);
+            // row of the map, the first row decides the width of the map
+            if (first == '#') {
+                int end;
+                if (tiles == null) {
+                    end = lineEnd(buf, pos, size);
+                    width = end - pos;
+                    // allocate enough rows for the rest of the file, assuming the same line ending as the first row
+                    int stride = width + (end < size && buf.get(end) == '\r' ? 2 : 1);
+                    tiles = new byte[((size - pos) / stride + 1) * width];
+                } else if (pos + width <= size && isLineEnd(buf, pos + width, size)) {
+                    // a row of the expected width, no need to scan it byte by byte
+                    end = pos + width;
+                } else {
+                    end = lineEnd(buf, pos, size);
+                }
+                if ((rows + 1) * width > tiles.length) {
+                    tiles = Arrays.copyOf(tiles, tiles.length + tiles.length / 2 + width);
+                }
+                if (end - pos != width) {
+                    ragged += 1;
+                }
+                int length = Math.min(end - pos, width);
+                buf.get(pos, tiles, rows * width, length);
+                if (length < width) {
+                    Arrays.fill(tiles, rows * width + length, (rows + 1) * width, (byte) '#');
+                }
+                rows += 1;
+                pos = end;
+                // "name " followed by the name of the map
+            } else if (first == 'n') {
+                int end = lineEnd(buf, pos, size);
+                byte[] name = new byte[Math.max(0, end - pos - 5)];
+                buf.get(Math.min(pos + 5, end), name);
+                mapName = new String(name, StandardCharsets.UTF_8).trim();
+                pos = end;
+                // "win " followed by the gold required to win
+            } else if (first == 'w') {
+                int end = lineEnd(buf, pos, size);
+                goldRequired = parseInt(buf, pos + 4, end);
+                pos = end;
+            } else {
+                pos = lineEnd(buf, pos, size);
+            }
+            // skip the line ending
+            while (pos < size && (buf.get(pos) == '\n' || buf.get(pos) == '\r')) {
+                pos += 1;
+            }
+        }
+        if (rows == 0 || width == 0) {
+            throw new IOException("Map file has no rows");
+        }
+        Map map = new Map(mapName, goldRequired, rows, width, new ArrayTileStore(tiles, width));
+        map.setRaggedRows(ragged);
+        return map;
+    }
+
+    // lineEnd(MappedByteBuffer, int, int) returns the position of the line ending after a position
+    // @return : position of the '\r' or '\n' ending the line, or the file size for the last line
+    private static int lineEnd(MappedByteBuffer buf, int pos, int size) {
+        while (pos < size && !isLineEnd(buf, pos, size)) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    // isLineEnd(MappedByteBuffer, int, int) returns if a position is the end of a line
+    private static boolean isLineEnd(MappedByteBuffer buf, int pos, int size) {
+        if (pos >= size) {
+            return true;
+        }
+        byte b = buf.get(pos);
+        return b == '\n' || b == '\r';
+    }
+
+    // parseInt(MappedByteBuffer, int, int) reads a whole number between two positions, ignoring spaces
+    // @throws : IOException if anything other than digits and spaces is found
+    private static int parseInt(MappedByteBuffer buf, int from, int to) throws IOException {
+        int value = 0;
+        boolean digits = false;
+        for (int i = from; i < to; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits = true;
+            } else if (b != ' ' && b != '\t') {
+                throw new IOException("Invalid gold required at byte " + i);
+            }
+        }
+        if (!digits) {
+            throw new IOException("Missing gold required at byte " + from);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// maps loaded once and shared as templates by every game played on them
+// each game gets an overlay of the template (see Map.overlay()), which costs memory only for its own changes,
+// instead of a full copy of the map read from the file again
+// a file is loaded again when its modification time or size changes; games already playing keep the old template
+// maps are analysed when loaded (see MapAnalysis) and refused if no player could win them, so a server never
+// starts sessions on a broken map; a file that fails is not read again until it changes, the failure is kept instead
+// safe to use from several threads at once
+public class MapRegistry {
+    // registry shared by everything in the process
+    private static final MapRegistry SHARED = new MapRegistry();
+
+    // loaded templates, or the failures of files that did not load, by file location
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // number of times a file was read, and of templates found already loaded
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    // shared() returns the registry shared by everything in the process
+    public static MapRegistry shared() {
+        return SHARED;
+    }
+
+    // template(String) returns the template of a map file, loading it if it has not been loaded
+    // or has changed since; the template's terrain cannot be changed, play on overlays of it
+    // @param : file location of the map, text or compiled
+    // @return : the template
+    // @throws : IOException if the file cannot be read, is not a map or cannot be won
+    public Map template(String fileLocation) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(Path.of(fileLocation), BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        Entry entry = entries.get(fileLocation);
+        if (entry == null || !entry.matches(modified, size)) {
+            // one thread loads a changed file while the others asking for it wait
+            entry = entries.compute(fileLocation, (file, old) -> {
+                if (old != null && old.matches(modified, size)) {
+                    return old;
+                }
+                loads.increment();
+                try {
+                    Map template = MapLoader.load(file);
+                    template.freeze();
+                    MapAnalysis analysis = template.getAnalysis();
+                    if (!analysis.canBeWon()) {
+                        throw new IOException("Map " + file + " " + String.join(", ", analysis.getProblems()));
+                    }
+                    return new Entry(modified, size, template, null);
+                } catch (IOException e) {
+                    return new Entry(modified, size, null, e);
+                }
+            });
+        } else if (entry.failure == null) {
+            hits.increment();
+        }
+        if (entry.failure != null) {
+            throw entry.failure;
+        }
+        return entry.template;
+    }
+
+    // session(String) returns a new overlay of a map file's template, for one game
+    // @param : file location of the map
+    // @return : the map to play the game on
+    // @throws : IOException if the file cannot be read, is not a map or cannot be won
+    public Map session(String fileLocation) throws IOException {
+        return template(fileLocation).overlay();
+    }
+
+    // evict(String) forgets the template of a map file, the next game on it loads the file again
+    // @param : file location of the map
+    public void evict(String fileLocation) {
+        entries.remove(fileLocation);
+    }
+
+    // getLoads() returns the number of times a map file was read
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    // getHits() returns the number of templates returned without reading the file
+    public long getHits() {
+        return hits.sum();
+    }
+
+    // a loaded template, or why the file failed to load, and the modification time and size of the file
+    private static final class Entry {
+        private final long modified;
+        private final long size;
+        private final Map template;
+        private final IOException failure;
+
+        Entry(long modified, long size, Map template, IOException failure) {
+            this.modified = modified;
+            this.size = size;
+            this.template = template;
+            this.failure = failure;
+        }
+
+        // matches(long, long) returns if the file still has the modification time and size it was loaded with
+        boolean matches(long modified, long size) {
+            return this.modified == modified && this.size == size;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Monte Carlo tree search for a bot's command, used instead of the bot's rule-based decisions when set with
+// GameLogic.setBotSearch()
+// each iteration forks the game, follows the tree down by upper confidence bounds, adds one new command,
+// then plays on with random human moves (other bots play by their rules) for a few turns and scores the result
+// the tree is open-loop: a node stands for a sequence of the bot's commands, whatever the others did between them
+// worker threads share one tree; visits are counted on the way down (a virtual loss, steering other workers
+// to different branches until the result is in) and scores are added on the way back up
+// the search sees the whole map, and stops at the time budget so a bot's turn never takes much longer than it
+public class MctsPlanner {
+    // exploration constant of the upper confidence bound (scores are between 0 and 1)
+    private static final double EXPLORATION = 0.7;
+    // scores are summed as fixed point numbers so they can be added atomically
+    private static final double SCALE = 1_000_000.0;
+    // commands the bot can give, with their opcodes
+    private static final byte[] MOVES = {GameLogic.OP_NORTH, GameLogic.OP_SOUTH, GameLogic.OP_EAST, GameLogic.OP_WEST};
+    private static final int[] MOVE_Y = {-1, 1, 0, 0};
+    private static final int[] MOVE_X = {0, 0, 1, -1};
+
+    // time allowed per decision
+    private final long budgetNanos;
+    // number of threads searching, the calling thread included
+    private final int threads;
+    // bot turns played after the tree before a game is scored
+    private final int horizon;
+    // threads helping the calling thread, null when searching on the calling thread alone
+    private final ExecutorService workers;
+    // total iterations and decisions, for reporting
+    private final AtomicLong iterations = new AtomicLong();
+    private final AtomicLong decisions = new AtomicLong();
+
+    // Constructor
+    // @param : time allowed per decision in milliseconds and number of threads to search with
+    public MctsPlanner(long budgetMillis, int threads) {
+        this(budgetMillis, threads, 12);
+    }
+
+    // Constructor
+    // @param : time allowed per decision in milliseconds, number of threads to search with
+    //          and bot turns played out past the tree
+    public MctsPlanner(long budgetMillis, int threads, int horizon) {
+        if (budgetMillis <= 0 || threads <= 0 || horizon <= 0) {
+            throw new IllegalArgumentException("budget, threads and horizon must be positive");
+        }
+        budgetNanos = budgetMillis * 1_000_000L;
+        this.threads = threads;
+        this.horizon = horizon;
+        workers = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, r -> {
+            Thread thread = new Thread(r, "mcts-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // choose(GameLogic) searches for the best command for the bot whose turn it is, leaving the game unchanged
+    // several games may call this at the same time, each decision has its own tree
+    // @param : the game, at a bot's turn
+    // @return : opcode of the chosen command
+    public byte choose(GameLogic game) {
+        long deadline = System.nanoTime() + budgetNanos;
+        GameLogic start = game.fork();
+        int botIndex = start.getBots().indexOf((BotPlayer) start.getCurrentPlayer());
+        // the gold and exits of the game's own map, which does not change during the search
+        SpatialIndex gold = game.getMap().getGoldIndex();
+        SpatialIndex exits = game.getMap().getExitIndex();
+        Node root = new Node((byte) 0, null);
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            helpers.add(workers.submit(() -> search(start, botIndex, root, deadline, gold, exits)));
+        }
+        search(start, botIndex, root, deadline, gold, exits);
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search failed", e.getCause());
+            }
+        }
+        decisions.incrementAndGet();
+        // the most visited command is the one the search trusts most
+        Node best = null;
+        Node[] children = root.children;
+        if (children != null) {
+            for (Node child : children) {
+                if (best == null || child.visits.get() > best.visits.get()) {
+                    best = child;
+                }
+            }
+        }
+        return best == null ? GameLogic.OP_LOOK : best.op;
+    }
+
+    // search(GameLogic, int, Node, long, SpatialIndex, SpatialIndex) runs iterations on the shared tree until the
+    // deadline, at least one
+    private void search(GameLogic start, int botIndex, Node root, long deadline, SpatialIndex gold,
+                        SpatialIndex exits) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        do {
+            GameLogic game = start.fork();
+            BotPlayer self = game.getBots().get(botIndex);
+            Node node = root;
+            node.visits.incrementAndGet();
+            // follow the tree down while its nodes have been expanded
+            while (node.children != null && game.gameRunning() && game.getCurrentPlayer() == self) {
+                node = select(node);
+                node.visits.incrementAndGet();
+                play(game, self, node.op, rand);
+            }
+            // add the commands possible from here, then try one of them
+            if (game.gameRunning() && game.getCurrentPlayer() == self) {
+                Node[] children = expand(node, game, self);
+                node = children[rand.nextInt(children.length)];
+                node.visits.incrementAndGet();
+                play(game, self, node.op, rand);
+            }
+            // play on with random commands and score the game
+            for (int turn = 0; turn < horizon && game.gameRunning() && game.getCurrentPlayer() == self; turn++) {
+                byte[] ops = commands(game, self);
+                play(game, self, ops[rand.nextInt(ops.length)], rand);
+            }
+            long score = (long) (score(game, self, gold, exits) * SCALE);
+            for (Node n = node; n != null; n = n.parent) {
+                n.value.addAndGet(score);
+            }
+            iterations.incrementAndGet();
+        } while (System.nanoTime() < deadline);
+    }
+
+    // select(Node) returns the child with the highest upper confidence bound, unvisited children first
+    private static Node select(Node node) {
+        Node[] children = node.children;
+        double logVisits = Math.log(Math.max(1, node.visits.get()));
+        Node best = null;
+        double bestBound = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            int visits = child.visits.get();
+            if (visits == 0) {
+                return child;
+            }
+            double bound = child.value.get() / SCALE / visits + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (bound > bestBound) {
+                bestBound = bound;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // expand(Node, GameLogic, BotPlayer) creates the children of a node, once, even if several threads try at once
+    private static Node[] expand(Node node, GameLogic game, BotPlayer self) {
+        synchronized (node) {
+            if (node.children == null) {
+                byte[] ops = commands(game, self);
+                Node[] children = new Node[ops.length];
+                for (int i = 0; i < ops.length; i++) {
+                    children[i] = new Node(ops[i], node);
+                }
+                node.children = children;
+            }
+            return node.children;
+        }
+    }
+
+    // commands(GameLogic, BotPlayer) returns the commands worth trying for the bot: moves that are not into a wall,
+    // pickup when on gold and quit when on an exit with enough gold to win
+    private static byte[] commands(GameLogic game, BotPlayer self) {
+        Map map = game.getMap();
+        byte[] ops = new byte[6];
+        int count = 0;
+        if (self.getCurrentTile() == 'E' && self.getGold() == map.getGoldRequired()) {
+            ops[count++] = GameLogic.OP_QUIT;
+        }
+        if (self.getCurrentTile() == 'G') {
+            ops[count++] = GameLogic.OP_PICKUP;
+        }
+        for (int d = 0; d < MOVES.length; d++) {
+            int y = self.getY() + MOVE_Y[d];
+            int x = self.getX() + MOVE_X[d];
+            if (y >= 0 && x >= 0 && y < map.getHeight() && x < map.getWidth() && map.getTerrain(y, x) != '#') {
+                ops[count++] = MOVES[d];
+            }
+        }
+        if (count == 0) {
+            // walled in, looking is the only thing left to do
+            ops[count++] = GameLogic.OP_LOOK;
+        }
+        return java.util.Arrays.copyOf(ops, count);
+    }
+
+    // play(GameLogic, BotPlayer, byte, ThreadLocalRandom) plays the bot's command then everyone else's turns
+    // up to the bot's next turn, humans moving at random and other bots by their rules
+    private static void play(GameLogic game, BotPlayer self, byte op, ThreadLocalRandom rand) {
+        game.execute(op);
+        game.checkCaught();
+        while (game.gameRunning() && game.getCurrentPlayer() != self) {
+            Player current = game.getCurrentPlayer();
+            if (current instanceof BotPlayer) {
+                game.botTurn();
+            } else if (current.getCurrentTile() == 'G') {
+                game.execute(GameLogic.OP_PICKUP);
+            } else if (current.getCurrentTile() == 'E' && current.getGold() == game.getMap().getGoldRequired()) {
+                game.execute(GameLogic.OP_QUIT);
+            } else {
+                game.execute(MOVES[rand.nextInt(MOVES.length)]);
+            }
+            game.checkCaught();
+            // the bot has left the game
+            if (!game.getBots().contains(self)) {
+                return;
+            }
+        }
+    }
+
+    // score(GameLogic, BotPlayer, SpatialIndex, SpatialIndex) scores a game for the bot between 0 (lost) and 1 (won)
+    // unfinished games score by how close the bot is to the nearest human, how much of the gold it holds and how
+    // close it is to what it needs next: the nearest gold, or the nearest exit once it holds enough
+    // @param : the game, the bot, and the gold and exits of the map at the start of the search
+    private static double score(GameLogic game, BotPlayer self, SpatialIndex gold, SpatialIndex exits) {
+        switch (game.getResult()) {
+            case BOT_WIN:
+            case CAUGHT:
+            case PLAYER_LOSE:
+                return 1.0;
+            case PLAYER_WIN:
+            case BOT_LOSE:
+                return 0.0;
+            default:
+                break;
+        }
+        if (!game.getBots().contains(self)) {
+            return 0.0;
+        }
+        int nearest = Integer.MAX_VALUE;
+        for (HumanPlayer human : game.getPlayers()) {
+            nearest = Math.min(nearest, Math.abs(human.getY() - self.getY()) + Math.abs(human.getX() - self.getX()));
+        }
+        double closeness = nearest == Integer.MAX_VALUE ? 0.0 : 1.0 / (1 + nearest);
+        boolean enough = self.getGold() >= game.getMap().getGoldRequired();
+        int[] objective = (enough ? exits : gold).nearest(self.getY(), self.getX());
+        double progress = objective == null ? 0.0
+                : 1.0 / (1 + Math.abs(objective[0] - self.getY()) + Math.abs(objective[1] - self.getX()));
+        double held = Math.min(1.0, self.getGold() / (double) Math.max(1, game.getMap().getGoldRequired()));
+        return 0.2 + 0.5 * closeness + 0.2 * held + 0.1 * progress;
+    }
+
+    // getThreads() returns the number of threads a decision searches with, the calling thread included
+    // the helpers of every decision come from one pool of getThreads() - 1 threads
+    public int getThreads() {
+        return threads;
+    }
+
+        // getIterations() returns the number of iterations run over all decisions
+    public long getIterations() {
+        return iterations.get();
+    }
+
+    // getDecisions() returns the number of decisions made
+    public long getDecisions() {
+        return decisions.get();
+    }
+
+    // shutdown() stops the worker threads, the planner cannot be used afterwards
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    // a command in the tree, with the visits and summed scores of the iterations that went through it
+    private static final class Node {
+        private final byte op;
+        private final Node parent;
+        private volatile Node[] children;
+        private final AtomicInteger visits = new AtomicInteger();
+        private final AtomicLong value = new AtomicLong();
+
+        Node(byte op, Node parent) {
+            this.op = op;
+            this.parent = parent;
+        }
+    }
+}
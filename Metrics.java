@@ -0,0 +1,270 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// counters and latency histograms of the game's hot paths: every command processed, bot decisions,
+// path searches and map loads, the shared plan cache's hit rate, plus JFR events for path searches and map loads
+// turned on with -Ddod.metrics=true; ENABLED is a constant, so with metrics off every "if (Metrics.ENABLED)"
+// block is removed by the JIT and instrumented code runs as if it had none
+// when on, the numbers are published as the MXBean "dod:type=Metrics", and -Ddod.metrics.dump=<seconds>
+// also prints them that often
+public final class Metrics {
+    // whether metrics are recorded, fixed at startup
+    public static final boolean ENABLED = Boolean.getBoolean("dod.metrics");
+
+    // commands processed and their latency, by opcode
+    private static final LongAdder[] COMMANDS = new LongAdder[GameLogic.OP_LOOKDELTA + 1];
+    private static final LatencyHistogram[] COMMAND_LATENCY = new LatencyHistogram[COMMANDS.length];
+    // whole bot turns, and the bots' route planning after a look
+    private static final LatencyHistogram BOT_TURN = new LatencyHistogram();
+    private static final LatencyHistogram BOT_PLAN = new LatencyHistogram();
+    // path searches and map loads
+    private static final LatencyHistogram PATH_SEARCH = new LatencyHistogram();
+    private static final LatencyHistogram MAP_LOAD = new LatencyHistogram();
+    // commands counted at the last dump and when, for the rate between dumps
+    private static long lastDumpCommands;
+    private static long lastDumpNanos = System.nanoTime();
+
+    static {
+        for (int op = 0; op < COMMANDS.length; op++) {
+            COMMANDS[op] = new LongAdder();
+            COMMAND_LATENCY[op] = new LatencyHistogram();
+        }
+        if (ENABLED) {
+            register();
+            long dumpSeconds = Long.getLong("dod.metrics.dump", 0);
+            if (dumpSeconds > 0) {
+                startDump(System.out, dumpSeconds);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // command(byte, long) records a processed command
+    // @param : opcode of the command and when it started (System.nanoTime())
+    public static void command(byte op, long startNanos) {
+        if (op < 0 || op >= COMMANDS.length) {
+            op = GameLogic.OP_INVALID;
+        }
+        COMMANDS[op].increment();
+        COMMAND_LATENCY[op].record(System.nanoTime() - startNanos);
+    }
+
+    // botTurn(long) records a whole bot turn, decision and command
+    // @param : when it started
+    public static void botTurn(long startNanos) {
+        BOT_TURN.record(System.nanoTime() - startNanos);
+    }
+
+    // botPlan(long) records a bot choosing its next destination
+    // @param : when it started
+    public static void botPlan(long startNanos) {
+        BOT_PLAN.record(System.nanoTime() - startNanos);
+    }
+
+    // beginPathSearch() starts timing a path search
+    // @return : the event to pass to endPathSearch()
+    public static PathSearchEvent beginPathSearch() {
+        PathSearchEvent event = new PathSearchEvent();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    // endPathSearch(PathSearchEvent, String, int) records a finished path search
+    // @param : the event from beginPathSearch(), kind of search and path length (-1 if none)
+    public static void endPathSearch(PathSearchEvent event, String search, int length) {
+        PATH_SEARCH.record(System.nanoTime() - event.startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.search = search;
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    // beginMapLoad() starts timing a map load
+    // @return : the event to pass to endMapLoad()
+    public static MapLoadEvent beginMapLoad() {
+        MapLoadEvent event = new MapLoadEvent();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    // endMapLoad(MapLoadEvent, String, Map) records a finished map load
+    // @param : the event from beginMapLoad(), file loaded and the map, null if it failed
+    public static void endMapLoad(MapLoadEvent event, String file, Map map) {
+        MAP_LOAD.record(System.nanoTime() - event.startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.height = map == null ? 0 : map.getHeight();
+            event.width = map == null ? 0 : map.getWidth();
+            event.commit();
+        }
+    }
+
+    // report() returns every counter and histogram as text, one line each, latencies in microseconds
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        long commands = 0;
+        for (int op = 0; op < COMMANDS.length; op++) {
+            long count = COMMANDS[op].sum();
+            commands += count;
+            if (count > 0) {
+                line(out, "command " + GameLogic.commandName((byte) op), COMMAND_LATENCY[op]);
+            }
+        }
+        line(out, "bot turn", BOT_TURN);
+        line(out, "bot plan", BOT_PLAN);
+        line(out, "path search", PATH_SEARCH);
+        line(out, "map load", MAP_LOAD);
+        PlanCache plans = PlanCache.shared();
+        out.append(String.format(java.util.Locale.ROOT,
+                "%-18s hits %d  misses %d  evictions %d  size %d  hit rate %.1f%%%n", "plan cache",
+                plans.getHits(), plans.getMisses(), plans.getEvictions(), plans.size(), plans.getHitRate() * 100));
+        synchronized (Metrics.class) {
+            long now = System.nanoTime();
+            double seconds = (now - lastDumpNanos) / 1e9;
+            out.append(String.format(java.util.Locale.ROOT, "commands %d, %.0f/s since last report%n",
+                    commands, (commands - lastDumpCommands) / Math.max(seconds, 1e-9)));
+            lastDumpCommands = commands;
+            lastDumpNanos = now;
+        }
+        return out.toString();
+    }
+
+    // line(StringBuilder, String, LatencyHistogram) appends the summary of one histogram
+    private static void line(StringBuilder out, String name, LatencyHistogram histogram) {
+        out.append(String.format(java.util.Locale.ROOT,
+                "%-18s count %10d  mean %9.2f  p50 %9.2f  p99 %9.2f  p99.9 %9.2f  max %9.2f us%n", name,
+                histogram.getCount(), histogram.getMean() / 1e3, histogram.percentile(50) / 1e3,
+                histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.getMax() / 1e3));
+    }
+
+    // startDump(PrintStream, long) prints the report at a fixed interval on a background thread
+    // @param : where to print and the interval in seconds
+    public static void startDump(PrintStream out, long seconds) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> out.print(report()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    // register() publishes the metrics as an MXBean
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean() {
+                public long getCommandCount() {
+                    long commands = 0;
+                    for (LongAdder count : COMMANDS) {
+                        commands += count.sum();
+                    }
+                    return commands;
+                }
+
+                public double getCommandP99Micros() {
+                    long p99 = 0;
+                    for (LatencyHistogram histogram : COMMAND_LATENCY) {
+                        p99 = Math.max(p99, histogram.percentile(99));
+                    }
+                    return p99 / 1e3;
+                }
+
+                public long getBotTurnCount() {
+                    return BOT_TURN.getCount();
+                }
+
+                public double getBotTurnP99Micros() {
+                    return BOT_TURN.percentile(99) / 1e3;
+                }
+
+                public long getPathSearchCount() {
+                    return PATH_SEARCH.getCount();
+                }
+
+                public long getMapLoadCount() {
+                    return MAP_LOAD.getCount();
+                }
+
+                public double getPlanCacheHitRate() {
+                    return PlanCache.shared().getHitRate();
+                }
+
+                public String getReport() {
+                    return report();
+                }
+            }, new ObjectName("dod:type=Metrics"));
+        } catch (Exception e) {
+            System.out.println("Metrics could not be registered: " + e.getMessage());
+        }
+    }
+
+    // metrics as seen through JMX (e.g. jconsole)
+    public interface MetricsMXBean {
+        // total commands processed
+        long getCommandCount();
+
+        // highest 99th percentile command latency over all commands, in microseconds
+        double getCommandP99Micros();
+
+        // bot turns played
+        long getBotTurnCount();
+
+        // 99th percentile bot turn latency, in microseconds
+        double getBotTurnP99Micros();
+
+        // path searches run
+        long getPathSearchCount();
+
+        // maps loaded
+        long getMapLoadCount();
+
+        // fraction of bot decisions from the view found in the shared plan cache
+        double getPlanCacheHitRate();
+
+        // the full text report
+        String getReport();
+    }
+
+    // JFR event of one path search
+    @Name("dod.PathSearch")
+    @Label("Path Search")
+    @Category("Dungeon of Doom")
+    public static final class PathSearchEvent extends Event {
+        @Label("Search")
+        String search;
+        @Label("Path Length")
+        int length;
+        // start time for the histogram, not part of the event
+        transient long startNanos;
+    }
+
+    // JFR event of one map load
+    @Name("dod.MapLoad")
+    @Label("Map Load")
+    @Category("Dungeon of Doom")
+    public static final class MapLoadEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Height")
+        int height;
+        @Label("Width")
+        int width;
+        // start time for the histogram, not part of the event
+        transient long startNanos;
+    }
+}
@@ -0,0 +1,174 @@
+// sparse layer of entities (players and bots) standing on the map, kept apart from the terrain
+// stored as an open-addressing hash table from cell number to the number of players and bots on the cell,
+// so it only takes memory for the few occupied cells instead of a whole second grid
+// doubles as the spatial index for captures: finding who stands on a cell is a single lookup
+public class OccupancyLayer {
+    // marks an empty slot in the key table
+    private static final long EMPTY = -1L;
+    // cell numbers (y * width + x) of the occupied cells
+    private long[] keys;
+    // entities on each occupied cell: number of players 'P' in the high 16 bits, bots 'B' in the low 16 bits
+    private int[] values;
+    // number of occupied cells
+    private int size;
+
+    // Constructor - creates an empty layer
+    public OccupancyLayer() {
+        keys = new long[16];
+        values = new int[16];
+        java.util.Arrays.fill(keys, EMPTY);
+    }
+
+    // Copy constructor
+    public OccupancyLayer(OccupancyLayer other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    // get(long) returns the indicator shown on a cell, a bot is shown over a player
+    // @param : cell number
+    // @return : indicator, or 0 if the cell is not occupied
+    public char get(long cell) {
+        int value = value(cell);
+        if (value == 0) {
+            return 0;
+        }
+        return (value & 0xFFFF) != 0 ? 'B' : 'P';
+    }
+
+    // count(long, char) returns how many entities of one kind stand on a cell
+    // @param : cell number and indicator of the kind of entity ('P' or 'B')
+    // @return : number of entities
+    public int count(long cell, char indicator) {
+        int value = value(cell);
+        return indicator == 'B' ? value & 0xFFFF : value >>> 16;
+    }
+
+    // put(long, char) adds an entity to a cell
+    // @param : cell number and indicator of the entity
+    public void put(long cell, char indicator) {
+        int mask = keys.length - 1;
+        int i = slot(cell, mask);
+        while (keys[i] != EMPTY && keys[i] != cell) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            keys[i] = cell;
+            values[i] = 0;
+            size += 1;
+        }
+        values[i] += unit(indicator);
+        // keep the table at most half full so probe sequences stay short
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    // remove(long, char) takes one entity off a cell
+    // @param : cell number and indicator of the entity
+    public void remove(long cell, char indicator) {
+        int i = find(cell);
+        if (i < 0 || count(cell, indicator) == 0) {
+            return;
+        }
+        values[i] -= unit(indicator);
+        if (values[i] == 0) {
+            delete(i);
+        }
+    }
+
+    // remove(long) takes every entity off a cell
+    // @param : cell number
+    public void remove(long cell) {
+        int i = find(cell);
+        if (i >= 0) {
+            delete(i);
+        }
+    }
+
+    // value(long) returns the packed counts of a cell, 0 if it is not occupied
+    private int value(long cell) {
+        int i = find(cell);
+        return i < 0 ? 0 : values[i];
+    }
+
+    // find(long) returns the slot of a cell in the table, or -1 if it is not occupied
+    private int find(long cell) {
+        int mask = keys.length - 1;
+        for (int i = slot(cell, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == cell) {
+                return i;
+            }
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    // unit(char) returns the amount added to a cell's packed counts for one entity
+    private static int unit(char indicator) {
+        return indicator == 'B' ? 1 : 1 << 16;
+    }
+
+    // delete(int) empties a slot of the table
+    private void delete(int i) {
+        int mask = keys.length - 1;
+        // shift following entries of the same probe sequence back so lookups never stop early
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            // move the entry if its home slot is not between the gap and its current slot
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        size -= 1;
+    }
+
+    // size() returns the number of occupied cells
+    public int size() {
+        return size;
+    }
+
+    // cells() returns the numbers of the occupied cells, in no particular order
+    public long[] cells() {
+        long[] cells = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                cells[n++] = key;
+            }
+        }
+        return cells;
+    }
+
+    // slot(long, int) returns the home slot of a cell in the table
+    private static int slot(long cell, int mask) {
+        long h = cell * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // grow() doubles the table and re-inserts every entry
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        java.util.Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i], mask);
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
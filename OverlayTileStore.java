@@ -0,0 +1,131 @@
+// terrain of one game read through to a template's terrain shared by many games, with only the tiles this game
+// has changed (e.g. gold picked up) kept here, in an open-addressing hash table from cell number to tile
+// creating one costs a few small arrays whatever the size of the map, and it grows with the changes made
+// the template's terrain must not change while overlays read it, see Map.overlay()
+public class OverlayTileStore implements TileStore {
+    // marks an empty slot in the key table
+    private static final long EMPTY = -1L;
+    // terrain shared with the template, only read
+    private final TileStore base;
+    // number of columns of the map
+    private final int width;
+    // cell numbers (y * width + x) of the changed tiles, and their terrain
+    private long[] keys;
+    private byte[] values;
+    // number of changed tiles
+    private int size;
+
+    // Constructor - an overlay with no changes yet
+    // @param : the shared terrain and the number of columns of the map
+    public OverlayTileStore(TileStore base, int width) {
+        this.base = base;
+        this.width = width;
+        keys = new long[8];
+        values = new byte[8];
+        java.util.Arrays.fill(keys, EMPTY);
+    }
+
+    // Copy constructor - same base, own copy of the changes
+    private OverlayTileStore(OverlayTileStore other) {
+        base = other.base;
+        width = other.width;
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    @Override
+    public byte get(int y, int x) {
+        if (size == 0) {
+            return base.get(y, x);
+        }
+        long cell = (long) y * width + x;
+        int mask = keys.length - 1;
+        for (int i = slot(cell, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == cell) {
+                return values[i];
+            }
+            if (keys[i] == EMPTY) {
+                return base.get(y, x);
+            }
+        }
+    }
+
+    @Override
+    public void set(int y, int x, byte tile) {
+        long cell = (long) y * width + x;
+        int mask = keys.length - 1;
+        int i = slot(cell, mask);
+        while (keys[i] != EMPTY && keys[i] != cell) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            keys[i] = cell;
+            size += 1;
+        }
+        values[i] = tile;
+        // keep the table at most half full so probe sequences stay short
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    // copy() returns an overlay of the same base with a copy of this overlay's changes
+    @Override
+    public TileStore copy() {
+        return new OverlayTileStore(this);
+    }
+
+    // nothing to write back, changes only live in memory
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // size() returns the number of tiles changed
+    public int size() {
+        return size;
+    }
+
+    // changedCells() returns the cell numbers (y * width + x) of the tiles changed, in no particular order
+    // a tile changed back to the base's terrain is still listed
+    public long[] changedCells() {
+        long[] cells = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                cells[n++] = key;
+            }
+        }
+        return cells;
+    }
+
+    // slot(long, int) returns the home slot of a cell in the table
+    private static int slot(long cell, int mask) {
+        long h = cell * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // grow() doubles the table and re-inserts every change
+    private void grow() {
+        long[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new byte[oldKeys.length * 2];
+        java.util.Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i], mask);
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+// breadth-first and A* path search over a Grid
+// all working state is kept in primitive arrays indexed by cell (y * width + x) and reused between searches,
+// so once the arrays have grown to the largest grid searched no memory is allocated per search
+// a PathFinder is not thread safe, each bot keeps its own
+public class PathFinder {
+    // neighbour offsets in the order they are tried: south, east, north, west
+    // (the same order the original list-based search used, so paths come out the same)
+    private static final int[] DY = {1, 0, -1, 0};
+    private static final int[] DX = {0, 1, 0, -1};
+    // direction characters matching the neighbour offsets
+    private static final char[] DIRECTION = {'s', 'e', 'n', 'w'};
+
+    // number of cells the arrays can currently hold
+    private int capacity;
+    // stamp[cell] == searchId when the cell has been reached in the current search
+    // saves clearing the arrays before every search
+    private int[] stamp;
+    // closed[cell] == searchId when A* has finished with the cell
+    private int[] closed;
+    // direction index (0-3) of the step taken to reach each cell
+    private byte[] via;
+    // queue of cells for breadth-first search, each cell is added at most once per search
+    private int[] queue;
+    // cost from the start for A*
+    private int[] cost;
+    // binary heap of open cells for A*, and each cell's position in the heap
+    private int[] heap;
+    private int[] heapPos;
+    private int heapSize;
+    // identifier of the current search
+    private int searchId;
+
+    // interface for the tiles a nearest-tile search is looking for
+    public interface Goal {
+        // isGoal(y, x) returns if a walkable tile is one the search is looking for
+        boolean isGoal(int y, int x);
+    }
+
+    // directions of the last path found, first step at index 0
+    private char[] path = new char[16];
+    // length of the last path found
+    private int pathLength;
+
+    // findPath(Grid, int, int, int, int) finds a shortest path with breadth-first search
+    // @param : grid to search, starting y and x coordinates, ending y and x coordinates
+    // @return : number of steps of the path, 0 if start and end are the same, -1 if no path exists
+    public int findPath(Grid grid, int sy, int sx, int ey, int ex) {
+        if (!Metrics.ENABLED) {
+            return searchPath(grid, sy, sx, ey, ex);
+        }
+        Metrics.PathSearchEvent event = Metrics.beginPathSearch();
+        int length = searchPath(grid, sy, sx, ey, ex);
+        Metrics.endPathSearch(event, "bfs", length);
+        return length;
+    }
+
+    // searchPath(Grid, int, int, int, int) runs the search of findPath()
+    private int searchPath(Grid grid, int sy, int sx, int ey, int ex) {
+        int width = grid.getWidth();
+        if (!begin(grid, sy, sx, ey, ex)) {
+            return -1;
+        }
+        int start = sy * width + sx;
+        int end = ey * width + ex;
+        if (start == end) {
+            pathLength = 0;
+            return 0;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        stamp[start] = searchId;
+        while (head < tail) {
+            int cell = queue[head++];
+            int y = cell / width;
+            int x = cell - y * width;
+            for (int d = 0; d < 4; d++) {
+                int ny = y + DY[d];
+                int nx = x + DX[d];
+                if (!open(grid, ny, nx)) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (stamp[next] == searchId) {
+                    continue;
+                }
+                stamp[next] = searchId;
+                via[next] = (byte) d;
+                if (next == end) {
+                    return buildPath(width, start, end);
+                }
+                queue[tail++] = next;
+            }
+        }
+        return -1;
+    }
+
+    // findPathToNearest(Grid, int, int, Goal) finds a shortest path to the closest tile accepted by a goal
+    // the start itself is never accepted
+    // @param : grid to search, starting y and x coordinates and the goal
+    // @return : number of steps of the path, -1 if no goal tile can be reached
+    public int findPathToNearest(Grid grid, int sy, int sx, Goal goal) {
+        if (!Metrics.ENABLED) {
+            return searchPathToNearest(grid, sy, sx, goal);
+        }
+        Metrics.PathSearchEvent event = Metrics.beginPathSearch();
+        int length = searchPathToNearest(grid, sy, sx, goal);
+        Metrics.endPathSearch(event, "nearest", length);
+        return length;
+    }
+
+    // searchPathToNearest(Grid, int, int, Goal) runs the search of findPathToNearest()
+    private int searchPathToNearest(Grid grid, int sy, int sx, Goal goal) {
+        pathLength = 0;
+        int width = grid.getWidth();
+        if (!open(grid, sy, sx)) {
+            return -1;
+        }
+        ensureCapacity(grid.getHeight() * width);
+        nextSearch();
+        int start = sy * width + sx;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        stamp[start] = searchId;
+        while (head < tail) {
+            int cell = queue[head++];
+            int y = cell / width;
+            int x = cell - y * width;
+            for (int d = 0; d < 4; d++) {
+                int ny = y + DY[d];
+                int nx = x + DX[d];
+                if (!open(grid, ny, nx)) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (stamp[next] == searchId) {
+                    continue;
+                }
+                stamp[next] = searchId;
+                via[next] = (byte) d;
+                if (goal.isGoal(ny, nx)) {
+                    return buildPath(width, start, next);
+                }
+                queue[tail++] = next;
+            }
+        }
+        return -1;
+    }
+
+    // findPathAStar(Grid, int, int, int, int) finds a shortest path with A* search and a Manhattan heuristic
+    // explores fewer cells than breadth-first search when the end is far away on an open grid
+    // @param : grid to search, starting y and x coordinates, ending y and x coordinates
+    // @return : number of steps of the path, 0 if start and end are the same, -1 if no path exists
+    public int findPathAStar(Grid grid, int sy, int sx, int ey, int ex) {
+        if (!Metrics.ENABLED) {
+            return searchPathAStar(grid, sy, sx, ey, ex);
+        }
+        Metrics.PathSearchEvent event = Metrics.beginPathSearch();
+        int length = searchPathAStar(grid, sy, sx, ey, ex);
+        Metrics.endPathSearch(event, "astar", length);
+        return length;
+    }
+
+    // searchPathAStar(Grid, int, int, int, int) runs the search of findPathAStar()
+    private int searchPathAStar(Grid grid, int sy, int sx, int ey, int ex) {
+        int width = grid.getWidth();
+        if (!begin(grid, sy, sx, ey, ex)) {
+            return -1;
+        }
+        int start = sy * width + sx;
+        int end = ey * width + ex;
+        if (start == end) {
+            pathLength = 0;
+            return 0;
+        }
+        heapSize = 0;
+        stamp[start] = searchId;
+        cost[start] = 0;
+        push(start, ey, ex, width);
+        while (heapSize > 0) {
+            int cell = pop(ey, ex, width);
+            if (cell == end) {
+                return buildPath(width, start, end);
+            }
+            closed[cell] = searchId;
+            int y = cell / width;
+            int x = cell - y * width;
+            int nextCost = cost[cell] + 1;
+            for (int d = 0; d < 4; d++) {
+                int ny = y + DY[d];
+                int nx = x + DX[d];
+                if (!open(grid, ny, nx)) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (closed[next] == searchId) {
+                    continue;
+                }
+                if (stamp[next] != searchId) {
+                    stamp[next] = searchId;
+                    cost[next] = nextCost;
+                    via[next] = (byte) d;
+                    push(next, ey, ex, width);
+                } else if (nextCost < cost[next]) {
+                    cost[next] = nextCost;
+                    via[next] = (byte) d;
+                    siftUp(heapPos[next], ey, ex, width);
+                }
+            }
+        }
+        return -1;
+    }
+
+    // getPathLength() returns the number of steps of the last path found
+    // @return : path length
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    // getStep(int) returns a direction of the last path found (n, e, s, w)
+    // @param : index of the step, 0 being the first step from the start
+    // @return : direction character of the step
+    public char getStep(int i) {
+        return path[i];
+    }
+
+    // begin(...) checks the end points and prepares the arrays for a new search
+    // @return : false if the end is outside the grid or a wall, so no path can exist
+    private boolean begin(Grid grid, int sy, int sx, int ey, int ex) {
+        pathLength = 0;
+        if (!open(grid, ey, ex) || sy < 0 || sx < 0 || sy >= grid.getHeight() || sx >= grid.getWidth()) {
+            return false;
+        }
+        ensureCapacity(grid.getHeight() * grid.getWidth());
+        nextSearch();
+        return true;
+    }
+
+    // nextSearch() starts a new search identifier
+    private void nextSearch() {
+        searchId += 1;
+        // stamps wrapped around, clear them so old searches are not mistaken for the current one
+        if (searchId == 0) {
+            java.util.Arrays.fill(stamp, 0);
+            java.util.Arrays.fill(closed, 0);
+            searchId = 1;
+        }
+    }
+
+    // open(Grid, int, int) returns if a cell is inside the grid and not a wall
+    private static boolean open(Grid grid, int y, int x) {
+        return y >= 0 && x >= 0 && y < grid.getHeight() && x < grid.getWidth() && grid.isWalkable(y, x);
+    }
+
+    // ensureCapacity(int) grows the working arrays to hold at least the given number of cells
+    private void ensureCapacity(int cells) {
+        if (cells <= capacity) {
+            return;
+        }
+        capacity = cells;
+        stamp = new int[cells];
+        closed = new int[cells];
+        via = new byte[cells];
+        queue = new int[cells];
+        cost = new int[cells];
+        heap = new int[cells];
+        heapPos = new int[cells];
+        searchId = 0;
+    }
+
+    // buildPath(int, int, int) follows the recorded steps back from the end to the start
+    // and stores the directions in order from the start
+    // @return : number of steps
+    private int buildPath(int width, int start, int end) {
+        int length = 0;
+        for (int cell = end; cell != start; length++) {
+            int d = via[cell];
+            cell -= DY[d] * width + DX[d];
+        }
+        if (path.length < length) {
+            path = new char[Math.max(length, path.length * 2)];
+        }
+        int i = length;
+        for (int cell = end; cell != start; ) {
+            int d = via[cell];
+            path[--i] = DIRECTION[d];
+            cell -= DY[d] * width + DX[d];
+        }
+        pathLength = length;
+        return length;
+    }
+
+    // heap helpers for A*, ordered by estimated total cost, ties broken towards cells closer to the end
+    private int priority(int cell, int ey, int ex, int width) {
+        int y = cell / width;
+        int x = cell - y * width;
+        return cost[cell] + Math.abs(y - ey) + Math.abs(x - ex);
+    }
+
+    private boolean before(int a, int b, int ey, int ex, int width) {
+        int fa = priority(a, ey, ex, width);
+        int fb = priority(b, ey, ex, width);
+        return fa < fb || (fa == fb && cost[a] > cost[b]);
+    }
+
+    private void push(int cell, int ey, int ex, int width) {
+        heap[heapSize] = cell;
+        heapPos[cell] = heapSize;
+        heapSize += 1;
+        siftUp(heapSize - 1, ey, ex, width);
+    }
+
+    private int pop(int ey, int ex, int width) {
+        int top = heap[0];
+        heapSize -= 1;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPos[heap[0]] = 0;
+            siftDown(0, ey, ex, width);
+        }
+        return top;
+    }
+
+    private void siftUp(int i, int ey, int ex, int width) {
+        int cell = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(cell, heap[parent], ey, ex, width)) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapPos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+
+    private void siftDown(int i, int ey, int ex, int width) {
+        int cell = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child], ey, ex, width)) {
+                child += 1;
+            }
+            if (!before(heap[child], cell, ey, ex, width)) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+}
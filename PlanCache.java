@@ -0,0 +1,225 @@
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// bots' decisions from what they see, remembered so a bot seeing a view already decided on needs no search
+// what a bot heads for in view (see BotPlayer.nextDestination()) only depends on which tiles of the 5x5 view are
+// walls, gold, exits or players, and on whether it has all the gold it needs, so that is the key, packed into
+// two longs at three bits a tile; the value is the moves as direction characters, empty when nothing in view
+// is worth heading for (the bot then plans from its memory of the map, which is not cached)
+// on corridor maps the same few views come up over and over, so most decisions become one hash lookup
+// split into stripes, each an LRU map behind its own lock, so bots on many threads rarely wait for each other
+// one cache is shared by every bot in the process, sized with -Ddod.planCache=<entries> (0 turns it off)
+public class PlanCache {
+    // cache shared by every bot in the process
+    private static final PlanCache SHARED = new PlanCache(Integer.getInteger("dod.planCache", 1 << 16));
+    // number of stripes, a power of two
+    private static final int STRIPES = 16;
+    // tiles packed into each long of a key, three bits each
+    private static final int TILES_PER_LONG = 21;
+    // codes of the tiles in a key
+    private static final int WALL = 0;
+    private static final int FLOOR = 1;
+    private static final int GOLD = 2;
+    private static final int EXIT = 3;
+    private static final int PLAYER = 4;
+
+    // the stripes, a key always goes to the same one
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // most decisions kept, over all stripes
+    private final int capacity;
+    // lookups that found a decision, that did not, and decisions dropped to make room
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Constructor
+    // @param : most decisions to keep, 0 to keep none
+    public PlanCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative");
+        }
+        this.capacity = capacity;
+        int perStripe = (capacity + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    // shared() returns the cache shared by every bot in the process
+    public static PlanCache shared() {
+        return SHARED;
+    }
+
+    // key(Viewport, boolean) packs what a decision depends on
+    // @param : the bot's view and whether it has all the gold it needs
+    // @return : the key, or null if the view is too large to pack (then the decision is not cached)
+    static Key key(Viewport view, boolean goldDone) {
+        int side = view.getSide();
+        if (side * side > TILES_PER_LONG * 2) {
+            return null;
+        }
+        long low = 0;
+        long high = 0;
+        // codes seen, one bit each
+        int seen = 0;
+        int i = 0;
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++, i++) {
+                int code = code(view.get(row, col));
+                seen |= 1 << code;
+                if (i < TILES_PER_LONG) {
+                    low |= (long) code << (3 * i);
+                } else {
+                    high |= (long) code << (3 * (i - TILES_PER_LONG));
+                }
+            }
+        }
+        if (goldDone) {
+            high |= Long.MIN_VALUE;
+        }
+        boolean target = goldDone ? (seen & 1 << EXIT) != 0 : (seen & (1 << GOLD | 1 << PLAYER)) != 0;
+        return new Key(low, high, target);
+    }
+
+    // code(char) returns the three bit code of a tile, anything walkable a bot does not head for counts as floor
+    private static int code(char tile) {
+        switch (tile) {
+            case '#': return WALL;
+            case 'G': return GOLD;
+            case 'E': return EXIT;
+            case 'P': return PLAYER;
+            default: return FLOOR;
+        }
+    }
+
+    // get(Key) returns the decision made for a key
+    // @param : the key
+    // @return : the moves as direction characters, or null if not known
+    String get(Key key) {
+        Stripe stripe = stripes[key.hashCode() & (STRIPES - 1)];
+        String plan;
+        synchronized (stripe) {
+            plan = stripe.get(key);
+        }
+        if (plan != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return plan;
+    }
+
+    // put(Key, String) remembers the decision made for a key, dropping the least recently used if full
+    // @param : the key and the moves as direction characters
+    void put(Key key, String plan) {
+        if (capacity == 0) {
+            return;
+        }
+        Stripe stripe = stripes[key.hashCode() & (STRIPES - 1)];
+        synchronized (stripe) {
+            stripe.put(key, plan);
+        }
+    }
+
+    // clear() forgets every decision, the statistics are kept
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    // getCapacity() returns the most decisions kept
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // size() returns the number of decisions kept
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    // getHits() returns the number of lookups that found a decision
+    public long getHits() {
+        return hits.sum();
+    }
+
+    // getMisses() returns the number of lookups that did not
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // getEvictions() returns the number of decisions dropped to make room
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // getHitRate() returns the fraction of lookups that found a decision, 0 before any lookup
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    // packed view and gold state of a decision
+    static final class Key {
+        private final long low;
+        private final long high;
+        // whether the view holds anything to head for, not part of the key (it follows from the rest)
+        private final boolean target;
+
+        Key(long low, long high, boolean target) {
+            this.low = low;
+            this.high = high;
+            this.target = target;
+        }
+
+        // hasTarget() returns if the view holds anything the bot would head for, if not there is nothing to look up
+        boolean hasTarget() {
+            return target;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return low == key.low && high == key.high;
+        }
+
+        // spreads the packed tiles over every bit, the low bits pick the stripe
+        @Override
+        public int hashCode() {
+            long h = (low ^ Long.rotateLeft(high, 29)) * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    // one stripe: an LRU map of decisions that drops the least recently used past its capacity
+    private final class Stripe extends LinkedHashMap<Key, String> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(java.util.Map.Entry<Key, String> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -21,6 +21,12 @@ public class Player {
         this.indicator = indicator;
     }
 
+    // copy constructor
+    // @param : the player to copy
+    public Player(Player other) {
+        this(other.gold, other.y, other.x, other.currentTile, other.indicator);
+    }
+
     // ACCESSORS
     // getGold() returns the number of gold currently owned by the player
     // @return : gold owned
@@ -34,6 +40,18 @@ public class Player {
         return new int[]{y,x};
     }
 
+    // getY() returns the y coordinate of the player, without allocating like getCoord()
+    // @return : y coordinate
+    public int getY() {
+        return y;
+    }
+
+    // getX() returns the x coordinate of the player
+    // @return : x coordinate
+    public int getX() {
+        return x;
+    }
+
     // getCurrentTile() returns the current tile the player is standing on
     // @return : character of the tile stood on by the player
     public char getCurrentTile() {
@@ -0,0 +1,41 @@
+import java.util.Random;
+
+// scripted strategy for a headless human player
+// picks up gold until it has enough and quits when it can win, otherwise moves in a random direction
+public class RandomStrategy implements Strategy {
+    // directions the player can move in
+    private static final String[] DIRECTIONS = {"n", "e", "s", "w"};
+    // seeded random number generator so games can be repeated
+    private final Random rand;
+    // the player controlled by this strategy
+    private final Player self;
+    // gold needed to win the map
+    private final int goldRequired;
+
+    // Constructor
+    // @param : random number generator, the controlled player and gold needed to win
+    public RandomStrategy(Random rand, Player self, int goldRequired) {
+        this.rand = rand;
+        this.self = self;
+        this.goldRequired = goldRequired;
+    }
+
+    // nextCommand() returns pickup if standing on gold while short of the gold needed, quit if standing on an exit
+    // with exactly the gold needed (more loses the game), otherwise a random direction
+    // @return : command to process
+    @Override
+    public String nextCommand() {
+        if (self.getCurrentTile() == 'G' && self.getGold() < goldRequired) {
+            return "pickup";
+        }
+        if (self.getCurrentTile() == 'E' && self.getGold() == goldRequired) {
+            return "quit";
+        }
+        return DIRECTIONS[rand.nextInt(DIRECTIONS.length)];
+    }
+
+    // observe(String, String) - responses are not needed by this strategy
+    @Override
+    public void observe(String command, String response) {
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// append-only binary journal of games, recording every command processed and a hash of its response
+// so that ReplayTool can play the games again and check they come out the same
+//
+// file format (big-endian), the header only written when the file is created:
+//   header   int MAGIC, short VERSION
+//   game     byte 'G', long seed, short humans, short bots, byte 1 for simultaneous moves (0 for turns),
+//            short ticks between actions of each human player then of each bot,
+//            short path length, path (UTF-8, empty for the default map)
+//            then one record per command: byte 'H' (human) or 'B' (bot), byte opcode, int hash of the response,
+//            in the order the commands were applied (with simultaneous moves, a tick's once it is resolved)
+//            then byte 'E', byte ordinal of the GameResult
+// each game is kept in memory by its Recorder and appended in one piece when it finishes,
+// so games played on different threads never interleave
+// writes go through a buffer, and are forced to disk at most once per sync interval, and at the latest one
+// interval after a game is appended even if no other game follows
+// a game cut short at the end of the file, by a crash part way through writing it, is cut off when the journal
+// is opened again, so the games appended after it can be replayed
+public class ReplayJournal implements Closeable {
+    // "DODJ" - first bytes of every journal
+    public static final int MAGIC = 0x444F444A;
+    public static final short VERSION = 2;
+    // record kinds
+    static final byte GAME = 'G';
+    static final byte HUMAN = 'H';
+    static final byte BOT = 'B';
+    static final byte END = 'E';
+
+    private final FileChannel channel;
+    // bytes waiting to be written
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    // least time between forcing writes to disk, and when they were last forced
+    private final long syncNanos;
+    private long lastSync = System.nanoTime();
+    // true if games have been appended since writes were last forced to disk
+    private boolean unsynced;
+    // thread forcing appended games to disk once the sync interval has passed, null when every write is forced
+    private final ScheduledExecutorService flusher;
+    // number of games appended
+    private long games;
+
+    // Constructor - opens a journal for appending, creating it if it does not exist, and cuts off a game left
+    // unfinished at its end
+    // @param : journal file and least time between forcing writes to disk in milliseconds (0 forces every write)
+    // @throws : IOException if the file cannot be opened or is not a journal of this version
+    public ReplayJournal(Path file, long syncMillis) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        syncNanos = syncMillis * 1_000_000L;
+        if (channel.size() == 0) {
+            buffer.putInt(MAGIC).putShort(VERSION);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(6);
+            channel.read(header, 0);
+            if (header.flip().remaining() < 6 || header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a replay journal: " + file);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                channel.close();
+                throw new IOException("Cannot append to a version " + version + " journal: " + file);
+            }
+            long end = endOfLastGame();
+            if (end < channel.size()) {
+                System.out.println("Journal " + file + " ends part way through a game, cutting off "
+                        + (channel.size() - end) + " bytes");
+                channel.truncate(end);
+            }
+        }
+        channel.position(channel.size());
+        if (syncMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replay-journal-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushIfDue, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    // endOfLastGame() reads through the games after the header
+    // @return : the position just after the last complete game
+    private long endOfLastGame() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(6))));
+        long position = 6;
+        long end = position;
+        try {
+            while (in.readByte() == GAME) {
+                in.readLong();
+                int players = in.readShort() + in.readShort();
+                in.readByte();
+                in.skipNBytes(2L * players);
+                int path = in.readShort();
+                in.skipNBytes(path);
+                position += 16 + 2L * players + path;
+                byte kind;
+                while ((kind = in.readByte()) == HUMAN || kind == BOT) {
+                    in.skipNBytes(5);
+                    position += 6;
+                }
+                if (kind != END) {
+                    break;
+                }
+                in.readByte();
+                position += 2;
+                end = position;
+            }
+        } catch (EOFException e) {
+            // the file ends part way through a game
+        }
+        return end;
+    }
+
+    // start(GameLogic, String) starts recording a game, which must not have played any commands yet
+    // how it resolves moves and everyone's action intervals are recorded as they are now, so set them first
+    // @param : the game and the map file it was loaded from, null for the default map
+    // @return : the recorder, call finish() on it when the game is over
+    public Recorder start(GameLogic game, String mapFile) {
+        Recorder recorder = new Recorder(game, mapFile);
+        game.setCommandListener(recorder);
+        return recorder;
+    }
+
+    // getGames() returns the number of games appended so far
+    public synchronized long getGames() {
+        return games;
+    }
+
+    // append(byte[], int) adds one finished game to the journal
+    private synchronized void append(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(buffer.remaining(), length - offset);
+            buffer.put(bytes, offset, n);
+            offset += n;
+        }
+        games += 1;
+        unsynced = true;
+        long now = System.nanoTime();
+        if (now - lastSync >= syncNanos) {
+            flush();
+        }
+    }
+
+    // flushIfDue() writes and forces to disk the games appended since the last sync once the sync interval has
+    // passed, so the last games before a quiet spell are not left in the buffer
+    private synchronized void flushIfDue() {
+        if (!unsynced || !channel.isOpen() || System.nanoTime() - lastSync < syncNanos) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println("Journal write failed: " + e.getMessage());
+        }
+    }
+
+    // drain() writes the buffered bytes to the file
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // flush() writes everything appended so far and forces it to disk
+    public synchronized void flush() throws IOException {
+        drain();
+        channel.force(false);
+        lastSync = System.nanoTime();
+        unsynced = false;
+    }
+
+    // close() flushes the journal and closes the file
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+        channel.close();
+    }
+
+    // records the commands of one game, registered as the game's command listener by start()
+    public final class Recorder implements CommandListener {
+        private final GameLogic game;
+        private byte[] bytes = new byte[256];
+        private int length;
+        private boolean finished;
+
+        private Recorder(GameLogic game, String mapFile) {
+            this.game = game;
+            byte[] path = mapFile == null ? new byte[0] : mapFile.getBytes(StandardCharsets.UTF_8);
+            int players = game.getPlayers().size() + game.getBots().size();
+            ensure(16 + 2 * players + path.length);
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            header.put(GAME).putLong(game.getSeed())
+                    .putShort((short) game.getPlayers().size()).putShort((short) game.getBots().size())
+                    .put((byte) (game.isSimultaneous() ? 1 : 0));
+            for (Player player : game.getPlayers()) {
+                header.putShort((short) game.getActionInterval(player));
+            }
+            for (Player bot : game.getBots()) {
+                header.putShort((short) game.getActionInterval(bot));
+            }
+            header.putShort((short) path.length).put(path);
+            length = header.position();
+        }
+
+        // commandProcessed(Player, byte, String) adds a record of the command to the game
+        @Override
+        public void commandProcessed(Player actor, byte op, String response) {
+            ensure(6);
+            bytes[length] = actor instanceof BotPlayer ? BOT : HUMAN;
+            bytes[length + 1] = op;
+            int hash = response.hashCode();
+            bytes[length + 2] = (byte) (hash >>> 24);
+            bytes[length + 3] = (byte) (hash >>> 16);
+            bytes[length + 4] = (byte) (hash >>> 8);
+            bytes[length + 5] = (byte) hash;
+            length += 6;
+        }
+
+        // finish() ends the game's record with its result and appends it to the journal,
+        // later calls do nothing
+        // @throws : IOException if the journal cannot be written
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            game.setCommandListener(null);
+            ensure(2);
+            bytes[length++] = END;
+            bytes[length++] = (byte) game.getResult().ordinal();
+            append(bytes, length);
+        }
+
+        // ensure(int) makes room for more bytes
+        private void ensure(int more) {
+            if (length + more > bytes.length) {
+                bytes = java.util.Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+// plays the games of a replay journal again and checks every command gets the same response as when recorded
+// human commands are taken from the journal, bots decide their own and must choose the same ones,
+// so any change to the rules or to the bots that alters a game shows up as a mismatch
+public class ReplayTool implements CommandListener {
+    // journal being replayed, memory-mapped
+    private final MappedByteBuffer journal;
+    // maps already loaded, by file, each game plays on an overlay
+    private final HashMap<String, Map> templates = new HashMap<>();
+    // version of the journal, games of version 1 journals always took turns at one tick per action
+    private final short version;
+    // records the commands played but not yet heard of are expected to produce, in order, each packed as
+    // kind, opcode and hash; with simultaneous moves a tick's commands are only heard of once it is resolved
+    private final ArrayDeque<long[]> expected = new ArrayDeque<>();
+    // set when a command did not match its record
+    private boolean mismatch;
+    // counts of the replay
+    private long games;
+    private long commands;
+    private long mismatchedGames;
+
+    // Constructor - maps a journal for reading
+    // @param : journal file
+    // @throws : IOException if the file cannot be read, is too large or is not a journal
+    public ReplayTool(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Journal too large: " + channel.size() + " bytes");
+            }
+            journal = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (journal.remaining() < 6 || journal.getInt() != ReplayJournal.MAGIC) {
+            throw new IOException("Not a replay journal: " + file);
+        }
+        version = journal.getShort();
+        if (version < 1 || version > ReplayJournal.VERSION) {
+            throw new IOException("Unsupported journal version " + version);
+        }
+    }
+
+    // run() replays every complete game in the journal
+    // a game cut short at the end of the file (e.g. by a crash while it was written) is ignored
+    // @return : number of games whose replay did not match
+    public long run() {
+        int header = version == 1 ? 15 : 16;
+        while (journal.remaining() >= header && journal.get() == ReplayJournal.GAME) {
+            if (!replayGame()) {
+                break;
+            }
+        }
+        return mismatchedGames;
+    }
+
+    // replayGame() plays the game starting at the current position of the journal
+    // @return : false if the journal ended part way through the game
+    private boolean replayGame() {
+        long seed = journal.getLong();
+        int humans = journal.getShort();
+        int bots = journal.getShort();
+        boolean simultaneous = version > 1 && journal.get() == 1;
+        int[] intervals = new int[humans + bots];
+        if (version > 1) {
+            if (journal.remaining() < 2 * intervals.length + 2) {
+                return false;
+            }
+            for (int i = 0; i < intervals.length; i++) {
+                intervals[i] = journal.getShort();
+            }
+        }
+        byte[] path = new byte[journal.getShort()];
+        if (journal.remaining() < path.length) {
+            return false;
+        }
+        journal.get(path);
+        GameLogic game = new GameLogic(template(new String(path, StandardCharsets.UTF_8)).overlay(), seed, humans, bots);
+        game.setSimultaneous(simultaneous);
+        if (version > 1) {
+            for (int i = 0; i < humans; i++) {
+                game.setActionInterval(game.getPlayers().get(i), intervals[i]);
+            }
+            for (int i = 0; i < bots; i++) {
+                game.setActionInterval(game.getBots().get(i), intervals[humans + i]);
+            }
+        }
+        game.setCommandListener(this);
+        mismatch = false;
+        expected.clear();
+        while (journal.remaining() >= 2) {
+            byte kind = journal.get();
+            if (kind == ReplayJournal.END) {
+                int result = journal.get();
+                game.checkCaught();
+                // every command recorded must have been heard of, and no others
+                if (game.getResult().ordinal() != result || !expected.isEmpty()) {
+                    mismatch = true;
+                }
+                games += 1;
+                if (mismatch) {
+                    mismatchedGames += 1;
+                }
+                return true;
+            }
+            if (journal.remaining() < 5) {
+                return false;
+            }
+            byte op = journal.get();
+            int hash = journal.getInt();
+            commands += 1;
+            // once a game has gone differently its later records cannot be played, only skipped
+            if (mismatch || !game.gameRunning()) {
+                mismatch = true;
+                continue;
+            }
+            expected.add(new long[] {kind, op, hash});
+            game.checkCaught();
+            if (game.isPlayerTurn() != (kind == ReplayJournal.HUMAN) || !game.gameRunning()) {
+                mismatch = true;
+            } else if (kind == ReplayJournal.HUMAN) {
+                game.execute(op);
+            } else {
+                game.botTurn();
+            }
+        }
+        return false;
+    }
+
+    // commandProcessed(Player, byte, String) checks a replayed command against its record
+    @Override
+    public void commandProcessed(Player actor, byte op, String response) {
+        byte kind = actor instanceof BotPlayer ? ReplayJournal.BOT : ReplayJournal.HUMAN;
+        long[] record = expected.poll();
+        if (record == null || kind != record[0] || op != record[1] || response.hashCode() != record[2]) {
+            mismatch = true;
+        }
+    }
+
+    // template(String) returns the map loaded from a file, loading it the first time
+    private Map template(String file) {
+        return templates.computeIfAbsent(file, f -> {
+            Map map = f.isEmpty() ? new Map() : new Map(f);
+            // if map read fails, load default map
+            return map.getMapName() == null ? new Map() : map;
+        });
+    }
+
+    // getGames() returns the number of games replayed
+    public long getGames() {
+        return games;
+    }
+
+    // getCommands() returns the number of commands replayed
+    public long getCommands() {
+        return commands;
+    }
+
+    // main method - replays a journal and prints whether every game matched
+    // arguments: [journal file]
+    public static void main(String[] args) throws IOException {
+        ReplayTool tool = new ReplayTool(Path.of(args.length > 0 ? args[0] : "games.journal"));
+        long start = System.nanoTime();
+        long mismatched = tool.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Games: %d, commands: %d, mismatched games: %d%n",
+                tool.getGames(), tool.getCommands(), mismatched);
+        System.out.printf("Time: %.3fs, commands/s: %.0f%n", seconds, tool.getCommands() / seconds);
+        if (mismatched != 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+// runs a single headless game, the human player's commands come from a strategy instead of the console
+public class Simulation {
+
+    // factory for the human players' strategies, called once the game has spawned its players
+    public interface StrategyFactory {
+        // create(GameLogic, Player, long) returns the strategy controlling a human player of a game
+        // @param : the game, the player to control and a seed for the strategy's random choices
+        Strategy create(GameLogic game, Player self, long seed);
+    }
+
+    // default factory: a seeded random strategy
+    public static final StrategyFactory RANDOM = (game, self, seed) ->
+            new RandomStrategy(new Random(seed), self, game.getMap().getGoldRequired());
+
+    // factory for a player that follows the game's flow fields to gold, then to an exit
+    public static final StrategyFactory GREEDY = (game, self, seed) -> new FlowFieldStrategy(game, self);
+
+    // game being simulated
+    private final GameLogic game;
+    // strategy controlling each human player
+    private final IdentityHashMap<Player, Strategy> humans = new IdentityHashMap<>();
+    // number of human turns taken so far
+    private int turns;
+    // commands of human players waiting for their tick to be resolved, with simultaneous moves
+    private final IdentityHashMap<Player, String> awaiting = new IdentityHashMap<>();
+
+    // Constructor
+    // @param : the map to play on (owned by the game), seed for the game and factory for the human strategy
+    public Simulation(Map map, long seed, StrategyFactory humanFactory) {
+        this(map, seed, 1, 1, humanFactory);
+    }
+
+    // Constructor for games with several human players and bots
+    // @param : the map to play on, seed for the game, number of human players and bots,
+    //          and factory for the human strategies
+    public Simulation(Map map, long seed, int humanCount, int botCount, StrategyFactory humanFactory) {
+        game = new GameLogic(map, seed, humanCount, botCount);
+        // a different seed for each strategy so they do not mirror the spawn positions
+        long strategySeed = seed ^ 0x5DEECE66DL;
+        for (HumanPlayer player : game.getPlayers()) {
+            humans.put(player, humanFactory.create(game, player, strategySeed++));
+        }
+    }
+
+    // run(int) plays the game until it ends or the turn limit is reached
+    // mirrors the main loop of GameLogic without any console input or output
+    // @param : maximum number of human turns
+    // @return : result of the game, UNFINISHED if the turn limit was reached
+    public GameResult run(int maxTurns) {
+        while (game.gameRunning()) {
+            if (game.checkCaught()) {
+                break;
+            }
+            if (game.isPlayerTurn()) {
+                if (turns >= maxTurns) {
+                    break;
+                }
+                Player player = game.getCurrentPlayer();
+                Strategy human = humans.get(player);
+                String command = human.nextCommand();
+                String response = game.process(command);
+                if (game.isSimultaneous()) {
+                    awaiting.put(player, command);
+                } else {
+                    human.observe(command, response);
+                }
+                turns += 1;
+            } else {
+                game.botTurn();
+            }
+            if (!awaiting.isEmpty()) {
+                deliverResponses();
+            }
+        }
+        return game.getResult();
+    }
+
+    // deliverResponses() tells the human players' strategies the responses of the ticks resolved so far
+    private void deliverResponses() {
+        java.util.Iterator<java.util.Map.Entry<Player, String>> it = awaiting.entrySet().iterator();
+        while (it.hasNext()) {
+            java.util.Map.Entry<Player, String> entry = it.next();
+            String response = game.takeResponse(entry.getKey());
+            if (response != null) {
+                humans.get(entry.getKey()).observe(entry.getValue(), response);
+                it.remove();
+            }
+        }
+    }
+
+    // getTurns() returns the number of human turns taken
+    // @return : turns taken
+    public int getTurns() {
+        return turns;
+    }
+
+    // getGame() returns the game being simulated
+    // @return : the game
+    public GameLogic getGame() {
+        return game;
+    }
+}
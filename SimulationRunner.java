@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// runs many independent headless games in parallel over a fork-join pool and aggregates their results
+// every game plays on its own overlay of the template map with seed = base seed + game number,
+// so the results of a run do not depend on the number of threads
+public class SimulationRunner {
+    // map all games are copied from
+    private final Map template;
+    // factory for the human players' strategies
+    private final Simulation.StrategyFactory humanFactory;
+    // maximum human turns per game
+    private final int maxTurns;
+    // number of human players and bots per game
+    private final int humanCount;
+    private final int botCount;
+    // journal every game is recorded in, and the map file it names, null when not recording
+    private ReplayJournal journal;
+    private String journalMap;
+    // search the bots choose their commands with, null for rule-based bots
+    private MctsPlanner botSearch;
+    // whether every game resolves the commands of a tick together, and the ticks between the bots' actions
+    private boolean simultaneous;
+    private int botInterval = TickScheduler.DEFAULT_INTERVAL;
+
+    // Constructor for games with one human player and one bot
+    // @param : template map, factory for human strategies and turn limit per game
+    public SimulationRunner(Map template, Simulation.StrategyFactory humanFactory, int maxTurns) {
+        this(template, humanFactory, maxTurns, 1, 1);
+    }
+
+    // Constructor
+    // @param : template map, factory for human strategies, turn limit per game,
+    //          number of human players and bots per game
+    public SimulationRunner(Map template, Simulation.StrategyFactory humanFactory, int maxTurns,
+                            int humanCount, int botCount) {
+        this.template = template;
+        this.humanFactory = humanFactory;
+        this.maxTurns = maxTurns;
+        this.humanCount = humanCount;
+        this.botCount = botCount;
+    }
+
+    // setJournal(ReplayJournal, String) records every game played from now on in a journal
+    // @param : the journal and the file the template map was loaded from, null for the default map
+    public void setJournal(ReplayJournal journal, String mapFile) {
+        this.journal = journal;
+        journalMap = mapFile;
+    }
+
+    // setBotSearch(MctsPlanner) makes the bots of every game choose their commands by searching
+    // searching bots choose by the clock, so their games cannot be replayed: do not record them in a journal
+    // @param : the search, null for rule-based bots
+    public void setBotSearch(MctsPlanner search) {
+        botSearch = search;
+    }
+
+    // setSimultaneous(boolean) makes every game resolve the commands of a tick together, see
+    // GameLogic.setSimultaneous()
+    public void setSimultaneous(boolean simultaneous) {
+        this.simultaneous = simultaneous;
+    }
+
+    // setBotInterval(int) sets the ticks between the bots' actions, the human players act every tick
+    public void setBotInterval(int ticks) {
+        botInterval = ticks;
+    }
+
+    // run(int, long, int) plays a number of games spread over a number of threads
+    // @param : number of games, base seed and number of threads
+    // @return : aggregated statistics of all games
+    public SimulationStats run(int games, long seed, int threads) {
+        // split into several batches per thread so idle threads can steal work from slow ones
+        int threshold = Math.max(1, games / (threads * 8));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new Batch(0, games, seed, threshold));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // playOne(long) plays a single game on a fresh overlay of the template
+    // @param : seed of the game
+    // @param : statistics to record the result in
+    private void playOne(long seed, SimulationStats stats) {
+        Simulation sim = new Simulation(template.overlay(), seed, humanCount, botCount, humanFactory);
+        GameLogic game = sim.getGame();
+        game.setBotSearch(botSearch);
+        game.setSimultaneous(simultaneous);
+        for (BotPlayer bot : game.getBots()) {
+            game.setActionInterval(bot, botInterval);
+        }
+        ReplayJournal.Recorder recorder = journal == null ? null : journal.start(sim.getGame(), journalMap);
+        GameResult result = sim.run(maxTurns);
+        if (recorder != null) {
+            try {
+                recorder.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        stats.record(result, sim.getTurns());
+    }
+
+    // a range of games [from, to), split in half until it is small enough to play directly
+    private class Batch extends RecursiveTask<SimulationStats> {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final long seed;
+        private final int threshold;
+
+        Batch(int from, int to, long seed, int threshold) {
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            if (to - from <= threshold) {
+                SimulationStats stats = new SimulationStats();
+                for (int i = from; i < to; i++) {
+                    playOne(seed + i, stats);
+                }
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            Batch left = new Batch(from, mid, seed, threshold);
+            left.fork();
+            SimulationStats right = new Batch(mid, to, seed, threshold).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    // loadTemplate(String) loads the template map of a run from the shared MapRegistry
+    // @param : file location of the map, "default" for the built-in map
+    // @return : the map, the built-in map if the file cannot be loaded or cannot be won
+    static Map loadTemplate(String mapFile) {
+        if (!mapFile.equals("default")) {
+            try {
+                Map template = MapRegistry.shared().template(mapFile);
+                System.out.println(template.getMapName());
+                // maps that can be won from some spawn tiles only are played, with a warning
+                for (String problem : template.getAnalysis().getProblems()) {
+                    System.out.println("Warning: " + problem);
+                }
+                return template;
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                System.out.println("Map failed to load, loading default map...");
+            }
+        }
+        return new Map();
+    }
+
+    // main method - runs a batch of games and prints the aggregate statistics
+    // arguments: [map file] [games] [seed] [threads] [max turns] [random|greedy] [humans] [bots] [journal file]
+    //            [bot search milliseconds] [bot search threads] [turns|simultaneous] [ticks between bot actions],
+    // "default" uses the built-in map, "-" for no journal and 0 milliseconds for rule-based bots
+    public static void main(String[] args) throws IOException {
+        String mapFile = args.length > 0 ? args[0] : "default";
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int maxTurns = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+        Simulation.StrategyFactory humans = args.length > 5 && args[5].equals("greedy")
+                ? Simulation.GREEDY : Simulation.RANDOM;
+        int humanCount = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+        int botCount = args.length > 7 ? Integer.parseInt(args[7]) : 1;
+
+        boolean record = args.length > 8 && !args[8].equals("-");
+        long searchMillis = args.length > 9 ? Long.parseLong(args[9]) : 0;
+        if (record && searchMillis > 0) {
+            // searching bots choose by the clock, ReplayTool could not play their games again
+            System.out.println("Games with searching bots cannot be replayed, run without a journal");
+            System.exit(2);
+        }
+
+        Map template = loadTemplate(mapFile);
+        SimulationRunner runner = new SimulationRunner(template, humans, maxTurns, humanCount, botCount);
+        ReplayJournal journal = record ? new ReplayJournal(Path.of(args[8]), 1000) : null;
+        if (journal != null) {
+            runner.setJournal(journal, mapFile.equals("default") ? null : mapFile);
+        }
+        MctsPlanner search = searchMillis > 0
+                ? new MctsPlanner(searchMillis, args.length > 10 ? Integer.parseInt(args[10]) : 1) : null;
+        runner.setBotSearch(search);
+        runner.setSimultaneous(args.length > 11 && args[11].equals("simultaneous"));
+        if (args.length > 12) {
+            runner.setBotInterval(Integer.parseInt(args[12]));
+        }
+        long start = System.nanoTime();
+        SimulationStats stats = runner.run(games, seed, threads);
+        if (journal != null) {
+            journal.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.print(stats);
+        System.out.printf("Threads: %d, time: %.3fs, games/s: %.0f%n", threads, seconds, games / seconds);
+        if (search != null) {
+            System.out.printf("Bot search: %d decisions, %.0f iterations each%n", search.getDecisions(),
+                    search.getIterations() / (double) Math.max(1, search.getDecisions()));
+            search.shutdown();
+        }
+        // latencies of the run when started with -Ddod.metrics=true
+        if (Metrics.ENABLED) {
+            System.out.print(Metrics.report());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// aggregate statistics of many headless games
+// a single instance is only written by one thread, results of parallel batches are combined with merge()
+public class SimulationStats {
+    // number of games per result, indexed by GameResult ordinal
+    private final long[] results = new long[GameResult.values().length];
+    // number of games played
+    private long games;
+    // total human turns over all games
+    private long totalTurns;
+    // fewest and most human turns in a single game
+    private long minTurns = Long.MAX_VALUE;
+    private long maxTurns;
+
+    // record(GameResult, int) adds the outcome of one game
+    // @param : result of the game and the number of human turns it took
+    public void record(GameResult result, int turns) {
+        results[result.ordinal()] += 1;
+        games += 1;
+        totalTurns += turns;
+        minTurns = Math.min(minTurns, turns);
+        maxTurns = Math.max(maxTurns, turns);
+    }
+
+    // merge(SimulationStats) adds the statistics of another batch of games to this one
+    // @param : statistics to add
+    // @return : this, after merging
+    public SimulationStats merge(SimulationStats other) {
+        for (int i = 0; i < results.length; i++) {
+            results[i] += other.results[i];
+        }
+        games += other.games;
+        totalTurns += other.totalTurns;
+        minTurns = Math.min(minTurns, other.minTurns);
+        maxTurns = Math.max(maxTurns, other.maxTurns);
+        return this;
+    }
+
+    // ACCESSORS
+    // getGames() returns the number of games played
+    public long getGames() {
+        return games;
+    }
+
+    // getCount(GameResult) returns the number of games that ended with a result
+    public long getCount(GameResult result) {
+        return results[result.ordinal()];
+    }
+
+    // getTotalTurns() returns the total human turns over all games
+    public long getTotalTurns() {
+        return totalTurns;
+    }
+
+    // getAverageTurns() returns the average human turns per game
+    public double getAverageTurns() {
+        return games == 0 ? 0 : (double) totalTurns / games;
+    }
+
+    // format display of all statistics, one per line
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Games: ").append(games).append('\n');
+        for (GameResult result : GameResult.values()) {
+            sb.append(result).append(": ").append(getCount(result)).append('\n');
+        }
+        sb.append(String.format("Turns: avg %.2f, min %d, max %d%n",
+                getAverageTurns(), games == 0 ? 0 : minTurns, maxTurns));
+        return sb.toString();
+    }
+}
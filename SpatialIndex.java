@@ -0,0 +1,371 @@
+import java.util.Arrays;
+
+// index of every tile of one kind on a map (e.g. all gold 'G'), for nearest and within-radius queries
+// without scanning the map; tiles are kept in square buckets of a uniform grid, and queries only look at
+// buckets that could hold an answer, ring by ring outwards from the query point
+// distances are Manhattan distances (steps ignoring walls), ties are broken by position on the map
+// registered with the map as a listener, so it stays current as tiles change (e.g. gold picked up)
+// the index of a map overlaying a template is built over the template's index, which it shares with every other
+// overlay, and keeps only the tiles the overlay has added and removed, so building it costs no scan of the map
+public class SpatialIndex implements MapListener {
+    // bits of a query key holding the position used to order tiles of equal distance (y * width + x),
+    // the distance takes the bits above
+    private static final int ORDER_BITS = 40;
+    // marks an empty slot in the table of removed tiles
+    private static final long EMPTY = -1L;
+
+    // tile this index finds
+    private final char kind;
+    // columns of the map, positions are y * width + x
+    private final long width;
+    // side of a bucket in tiles, and number of bucket rows and columns
+    private final int bucketSize;
+    private final int bucketRows;
+    private final int bucketCols;
+    // tiles in each bucket, packed ((long) y << 32 | x), and how many; for an index over a template's index only
+    // the tiles added, null until one is
+    private long[][] buckets;
+    private int[] counts;
+    // number of tiles in the index
+    private int size;
+    // index of the template this index is built over, shared and never changed, null if none
+    private final SpatialIndex base;
+    // open-addressing hash table of the packed tiles of the base taken out of this index, null until one is
+    // a tile put back is added to this index's own buckets instead of being taken out of the table
+    private long[] removed;
+    private int removedCount;
+
+    // Constructor - indexes every tile of a kind on a map and starts following its changes
+    // @param : the map, the tile to index and the side of a bucket in tiles
+    // @throws : IllegalArgumentException if the map has too many tiles to order them in a query key
+    public SpatialIndex(Map map, char kind, int bucketSize) {
+        this.kind = kind;
+        this.bucketSize = bucketSize;
+        width = checkedWidth(map);
+        bucketRows = (map.getHeight() + bucketSize - 1) / bucketSize;
+        bucketCols = (map.getWidth() + bucketSize - 1) / bucketSize;
+        base = null;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                if (map.getTerrain(y, x) == kind) {
+                    add(y, x);
+                }
+            }
+        }
+        map.addListener(this);
+    }
+
+    // Constructor - indexes tiles whose positions are already known and starts following the map's changes
+    // @param : the map, the tile to index, the side of a bucket in tiles and the position (y * width + x)
+    //          of every tile of that kind on the map
+    // @throws : IllegalArgumentException if the map has too many tiles to order them in a query key
+    public SpatialIndex(Map map, char kind, int bucketSize, int[] positions) {
+        this.kind = kind;
+        this.bucketSize = bucketSize;
+        width = checkedWidth(map);
+        bucketRows = (map.getHeight() + bucketSize - 1) / bucketSize;
+        bucketCols = (map.getWidth() + bucketSize - 1) / bucketSize;
+        base = null;
+        int columns = map.getWidth();
+        for (int position : positions) {
+            add(position / columns, position % columns);
+        }
+        map.addListener(this);
+    }
+
+    // Constructor - indexes the tiles of a map overlaying a template, over the template's index, and starts
+    // following the map's changes; costs one lookup per tile the map has changed from the template
+    // @param : the map, the index of the same kind of tile on its template, which must not change, and the cell
+    //          numbers (y * width + x) of the tiles the map has changed from the template
+    public SpatialIndex(Map map, SpatialIndex base, long[] changedCells) {
+        kind = base.kind;
+        bucketSize = base.bucketSize;
+        width = base.width;
+        bucketRows = base.bucketRows;
+        bucketCols = base.bucketCols;
+        this.base = base;
+        size = base.size;
+        for (long cell : changedCells) {
+            int y = (int) (cell / width);
+            int x = (int) (cell % width);
+            boolean inBase = base.holds(y, x);
+            boolean now = map.getTerrain(y, x) == kind;
+            if (inBase && !now) {
+                markRemoved((long) y << 32 | x);
+                size -= 1;
+            } else if (!inBase && now) {
+                add(y, x);
+            }
+        }
+        map.addListener(this);
+    }
+
+    // checkedWidth(Map) returns the width of a map whose positions and distances fit in a query key
+    private static long checkedWidth(Map map) {
+        long height = map.getHeight();
+        long width = map.getWidth();
+        if (height * width > 1L << ORDER_BITS || height + width >= 1L << (63 - ORDER_BITS)) {
+            throw new IllegalArgumentException("Map too large to index: " + height + "x" + width);
+        }
+        return width;
+    }
+
+    // size() returns the number of tiles in the index
+    public int size() {
+        return size;
+    }
+
+    // terrainChanged(y, x, char, char) adds or removes a tile when it becomes or stops being of the indexed kind
+    @Override
+    public void terrainChanged(int y, int x, char oldTile, char newTile) {
+        if (oldTile == kind) {
+            if (!remove(y, x) && base != null) {
+                // a tile of the base, which stays as it is
+                markRemoved((long) y << 32 | x);
+                size -= 1;
+            }
+        } else if (newTile == kind) {
+            add(y, x);
+        }
+    }
+
+    // nearest(int, int) returns the closest tile to a position
+    // @param : y and x coordinates of a tile on the map
+    // @return : coordinates (y,x) of the closest tile, or null if there are none
+    public int[] nearest(int y, int x) {
+        int[][] found = kNearest(y, x, 1);
+        return found.length == 0 ? null : found[0];
+    }
+
+    // kNearest(int, int, int) returns up to k of the closest tiles to a position, closest first
+    // rings of buckets are searched outwards until no unsearched bucket can hold a closer tile than the k found
+    // @param : y and x coordinates of a tile on the map and the number of tiles wanted
+    // @return : coordinates (y,x) of the tiles found
+    public int[][] kNearest(int y, int x, int k) {
+        // best tiles so far as (distance << ORDER_BITS | position), kept sorted, worst last
+        long[] best = new long[Math.max(0, k)];
+        int found = 0;
+        int by = clamp(y / bucketSize, bucketRows);
+        int bx = clamp(x / bucketSize, bucketCols);
+        int maxRing = Math.max(Math.max(by, bucketRows - 1 - by), Math.max(bx, bucketCols - 1 - bx));
+        for (int ring = 0; ring <= maxRing && k > 0; ring++) {
+            // every tile of this ring is at least this far away
+            long bound = ring == 0 ? 0 : (long) (ring - 1) * bucketSize + 1;
+            if (found == k && bound > (best[k - 1] >>> ORDER_BITS)) {
+                break;
+            }
+            for (int ry = by - ring; ry <= by + ring; ry++) {
+                if (ry < 0 || ry >= bucketRows) {
+                    continue;
+                }
+                // inner rows of the ring only have the two buckets at either end
+                int step = ry == by - ring || ry == by + ring ? 1 : Math.max(1, 2 * ring);
+                for (int rx = bx - ring; rx <= bx + ring; rx += step) {
+                    if (rx < 0 || rx >= bucketCols) {
+                        continue;
+                    }
+                    int b = ry * bucketCols + rx;
+                    if (base != null) {
+                        for (int i = 0; i < base.counts(b); i++) {
+                            long tile = base.buckets[b][i];
+                            if (!isRemoved(tile)) {
+                                found = offer(best, found, (long) distance(tile, y, x) << ORDER_BITS | order(tile));
+                            }
+                        }
+                    }
+                    for (int i = 0; i < counts(b); i++) {
+                        long tile = buckets[b][i];
+                        found = offer(best, found, (long) distance(tile, y, x) << ORDER_BITS | order(tile));
+                    }
+                }
+            }
+        }
+        return positions(best, found);
+    }
+
+    // offer(long[], int, long) keeps a key among the best found so far if it is better than the worst of them
+    // @param : the best keys, sorted, the number found and the key
+    // @return : the number found afterwards
+    private static int offer(long[] best, int found, long key) {
+        if (found < best.length) {
+            best[found++] = key;
+            sortLast(best, found);
+        } else if (key < best[found - 1]) {
+            best[found - 1] = key;
+            sortLast(best, found);
+        }
+        return found;
+    }
+
+    // withinRadius(int, int, int) returns every tile within a distance of a position, closest first
+    // only the buckets overlapping the square around the radius are searched
+    // @param : y and x coordinates and the greatest distance
+    // @return : coordinates (y,x) of the tiles found
+    public int[][] withinRadius(int y, int x, int radius) {
+        long[] keys = new long[16];
+        int found = 0;
+        int y0 = clamp((y - radius) / bucketSize, bucketRows);
+        int y1 = clamp((y + radius) / bucketSize, bucketRows);
+        int x0 = clamp((x - radius) / bucketSize, bucketCols);
+        int x1 = clamp((x + radius) / bucketSize, bucketCols);
+        for (int by = y0; by <= y1; by++) {
+            for (int bx = x0; bx <= x1; bx++) {
+                int b = by * bucketCols + bx;
+                int own = counts(b);
+                int shared = base == null ? 0 : base.counts(b);
+                for (int i = 0; i < shared + own; i++) {
+                    long tile = i < shared ? base.buckets[b][i] : buckets[b][i - shared];
+                    int distance = distance(tile, y, x);
+                    if (distance <= radius && (i >= shared || !isRemoved(tile))) {
+                        if (found == keys.length) {
+                            keys = Arrays.copyOf(keys, found * 2);
+                        }
+                        keys[found++] = (long) distance << ORDER_BITS | order(tile);
+                    }
+                }
+            }
+        }
+        Arrays.sort(keys, 0, found);
+        return positions(keys, found);
+    }
+
+    // positions(long[], int) returns the coordinates (y,x) of the tiles of the first keys
+    private int[][] positions(long[] keys, int count) {
+        int[][] result = new int[count][];
+        for (int i = 0; i < count; i++) {
+            long position = keys[i] & ((1L << ORDER_BITS) - 1);
+            result[i] = new int[]{(int) (position / width), (int) (position % width)};
+        }
+        return result;
+    }
+
+    // add(int, int) puts a tile in its bucket
+    private void add(int y, int x) {
+        if (buckets == null) {
+            buckets = new long[bucketRows * bucketCols][];
+            counts = new int[buckets.length];
+        }
+        int b = bucket(y, x);
+        if (buckets[b] == null) {
+            buckets[b] = new long[4];
+        } else if (counts[b] == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], counts[b] * 2);
+        }
+        buckets[b][counts[b]++] = (long) y << 32 | x;
+        size += 1;
+    }
+
+    // remove(int, int) takes a tile out of its bucket, the bucket's last tile takes its place
+    // @return : false if the tile is not in this index's own buckets
+    private boolean remove(int y, int x) {
+        int b = bucket(y, x);
+        long tile = (long) y << 32 | x;
+        for (int i = 0; i < counts(b); i++) {
+            if (buckets[b][i] == tile) {
+                buckets[b][i] = buckets[b][--counts[b]];
+                size -= 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // holds(int, int) returns if a tile is in this index's own buckets
+    private boolean holds(int y, int x) {
+        int b = bucket(y, x);
+        long tile = (long) y << 32 | x;
+        for (int i = 0; i < counts(b); i++) {
+            if (buckets[b][i] == tile) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // counts(int) returns the number of tiles in one of this index's own buckets
+    private int counts(int b) {
+        return counts == null ? 0 : counts[b];
+    }
+
+    // isRemoved(long) returns if a packed tile of the base has been taken out of this index
+    private boolean isRemoved(long tile) {
+        if (removed == null) {
+            return false;
+        }
+        int mask = removed.length - 1;
+        for (int i = slot(tile, mask); ; i = (i + 1) & mask) {
+            if (removed[i] == tile) {
+                return true;
+            }
+            if (removed[i] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    // markRemoved(long) takes a packed tile of the base out of this index
+    private void markRemoved(long tile) {
+        if (removed == null) {
+            removed = new long[8];
+            Arrays.fill(removed, EMPTY);
+        }
+        int mask = removed.length - 1;
+        int i = slot(tile, mask);
+        while (removed[i] != EMPTY && removed[i] != tile) {
+            i = (i + 1) & mask;
+        }
+        if (removed[i] == EMPTY) {
+            removed[i] = tile;
+            removedCount += 1;
+            // keep the table at most half full so probe sequences stay short
+            if (removedCount * 2 > removed.length) {
+                long[] old = removed;
+                removed = new long[old.length * 2];
+                Arrays.fill(removed, EMPTY);
+                removedCount = 0;
+                for (long kept : old) {
+                    if (kept != EMPTY) {
+                        markRemoved(kept);
+                    }
+                }
+            }
+        }
+    }
+
+    // slot(long, int) returns the home slot of a packed tile in the table of removed tiles
+    private static int slot(long tile, int mask) {
+        long h = tile * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // bucket(int, int) returns the bucket number of a tile
+    private int bucket(int y, int x) {
+        return (y / bucketSize) * bucketCols + x / bucketSize;
+    }
+
+    // order(long) returns the position of a packed tile, ordering tiles row by row
+    private long order(long tile) {
+        return (tile >> 32) * width + (int) tile;
+    }
+
+    // distance(long, int, int) returns the Manhattan distance from a packed tile to a position
+    private static int distance(long tile, int y, int x) {
+        return Math.abs((int) (tile >> 32) - y) + Math.abs((int) tile - x);
+    }
+
+    // clamp(int, int) limits a bucket row or column to the grid
+    private static int clamp(int b, int count) {
+        return Math.max(0, Math.min(count - 1, b));
+    }
+
+    // sortLast(long[], int) moves the last of the first n keys into sorted place
+    private static void sortLast(long[] keys, int n) {
+        long key = keys[n - 1];
+        int i = n - 1;
+        while (i > 0 && keys[i - 1] > key) {
+            keys[i] = keys[i - 1];
+            i -= 1;
+        }
+        keys[i] = key;
+    }
+}
@@ -0,0 +1,12 @@
+// interface for anything that decides the commands of a player without console input
+// implemented by the bot player and by scripted players used in headless simulations
+public interface Strategy {
+
+    // nextCommand() returns the command to be processed for the player this turn
+    // @return : command to process
+    String nextCommand();
+
+    // observe(String, String) passes back the response of the command processed this turn
+    // @param : the command processed and its response
+    void observe(String command, String response);
+}
@@ -0,0 +1,216 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.function.Function;
+
+// decides who acts next in a game: every entity has a time (in ticks) of its next action and an interval
+// between actions, and the entity with the earliest time acts next, ties going to the entity added first
+// entities with the same interval take turns round-robin in the order they were added, as the game always did;
+// a slower entity (longer interval) simply acts less often
+// kept in a binary heap indexed by entity, so choosing, rescheduling and removing an entity are O(log n)
+// whatever the number of entities
+public class TickScheduler<T> {
+    // interval of an entity added without one, in ticks
+    public static final int DEFAULT_INTERVAL = 1;
+
+    // entries ordered as a binary heap by (time, order)
+    private Entry<T>[] heap;
+    private int size;
+    // entry of each entity, to reschedule or remove it without searching the heap
+    private final IdentityHashMap<T, Entry<T>> entries = new IdentityHashMap<>();
+    // order given to the next entity added
+    private long nextOrder;
+    // time of the last action chosen, entities added later start from it
+    private long now;
+
+    // Constructor - an empty scheduler at tick 0
+    @SuppressWarnings("unchecked")
+    public TickScheduler() {
+        heap = (Entry<T>[]) new Entry<?>[8];
+    }
+
+    // copy(Function) returns a copy of the scheduler with each entity replaced, e.g. by its copy in a forked game
+    // @param : the replacement of each entity, never null
+    // @return : the copy, choosing in exactly the same order as this scheduler
+    public TickScheduler<T> copy(Function<T, T> replacement) {
+        TickScheduler<T> copy = new TickScheduler<>();
+        copy.heap = Arrays.copyOf(heap, heap.length);
+        for (int i = 0; i < size; i++) {
+            Entry<T> entry = heap[i];
+            Entry<T> moved = new Entry<>(replacement.apply(entry.entity), entry.time, entry.order, entry.interval);
+            moved.index = i;
+            copy.heap[i] = moved;
+            copy.entries.put(moved.entity, moved);
+        }
+        copy.size = size;
+        copy.nextOrder = nextOrder;
+        copy.now = now;
+        return copy;
+    }
+
+    // add(T) adds an entity acting from the current tick with the default interval
+    // @param : the entity
+    public void add(T entity) {
+        add(entity, now, DEFAULT_INTERVAL);
+    }
+
+    // add(T, long, int) adds an entity
+    // @param : the entity, the tick of its first action and the ticks between its actions
+    // @throws : IllegalArgumentException if the entity is already scheduled or the interval is not positive
+    public void add(T entity, long time, int interval) {
+        checkInterval(interval);
+        if (entries.containsKey(entity)) {
+            throw new IllegalArgumentException("Already scheduled: " + entity);
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        Entry<T> entry = new Entry<>(entity, time, nextOrder++, interval);
+        entries.put(entity, entry);
+        entry.index = size;
+        heap[size++] = entry;
+        siftUp(entry.index);
+    }
+
+    // current() returns the entity whose action is next
+    // @return : the entity, null if none are scheduled
+    public T current() {
+        return size == 0 ? null : heap[0].entity;
+    }
+
+    // now() returns the tick of the next action, or of the last one if nothing is scheduled
+    public long now() {
+        return size == 0 ? now : heap[0].time;
+    }
+
+    // next() ends the current entity's action, scheduling its next one an interval later
+    // @return : the tick of the action just ended
+    public long next() {
+        Entry<T> top = heap[0];
+        now = top.time;
+        top.time += top.interval;
+        siftDown(0);
+        return now;
+    }
+
+    // remove(T) takes an entity out of the schedule
+    // @param : the entity
+    // @return : true if it was scheduled
+    public boolean remove(T entity) {
+        Entry<T> entry = entries.remove(entity);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.index == 0) {
+            now = entry.time;
+        }
+        Entry<T> last = heap[--size];
+        heap[size] = null;
+        if (last != entry) {
+            heap[entry.index] = last;
+            last.index = entry.index;
+            siftDown(last.index);
+            siftUp(last.index);
+        }
+        return true;
+    }
+
+    // setInterval(T, int) changes the ticks between an entity's actions, from its next action on
+    // @param : the entity and its new interval
+    public void setInterval(T entity, int interval) {
+        checkInterval(interval);
+        entry(entity).interval = interval;
+    }
+
+    // getInterval(T) returns the ticks between an entity's actions
+    public int getInterval(T entity) {
+        return entry(entity).interval;
+    }
+
+    // timeOf(T) returns the tick of an entity's next action
+    public long timeOf(T entity) {
+        return entry(entity).time;
+    }
+
+    // contains(T) returns if an entity is scheduled
+    public boolean contains(T entity) {
+        return entries.containsKey(entity);
+    }
+
+    // size() returns the number of entities scheduled
+    public int size() {
+        return size;
+    }
+
+    // entry(T) returns the entry of a scheduled entity
+    private Entry<T> entry(T entity) {
+        Entry<T> entry = entries.get(entity);
+        if (entry == null) {
+            throw new IllegalArgumentException("Not scheduled: " + entity);
+        }
+        return entry;
+    }
+
+    // checkInterval(int) refuses intervals that would not move an entity forward in time
+    private static void checkInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+    }
+
+    // siftUp(int) moves an entry towards the root until its parent acts before it
+    private void siftUp(int i) {
+        Entry<T> entry = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!entry.before(heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heap[i].index = i;
+            i = parent;
+        }
+        heap[i] = entry;
+        entry.index = i;
+    }
+
+    // siftDown(int) moves an entry towards the leaves until it acts before both children
+    private void siftDown(int i) {
+        Entry<T> entry = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1].before(heap[child])) {
+                child += 1;
+            }
+            if (!heap[child].before(entry)) {
+                break;
+            }
+            heap[i] = heap[child];
+            heap[i].index = i;
+            i = child;
+        }
+        heap[i] = entry;
+        entry.index = i;
+    }
+
+    // an entity, the tick of its next action, its interval, the order it was added in and its place in the heap
+    private static final class Entry<T> {
+        private final T entity;
+        private long time;
+        private final long order;
+        private int interval;
+        private int index;
+
+        Entry(T entity, long time, long order, int interval) {
+            this.entity = entity;
+            this.time = time;
+            this.order = order;
+            this.interval = interval;
+        }
+
+        // before(Entry) returns if this entry acts before another
+        boolean before(Entry<T> other) {
+            return time < other.time || time == other.time && order < other.order;
+        }
+    }
+}
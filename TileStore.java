@@ -0,0 +1,24 @@
+import java.io.IOException;
+
+// storage of the terrain of a map, one byte per tile
+// lets the map keep its terrain either in memory or in chunks loaded from disk when needed
+public interface TileStore {
+
+    // get(y, x) returns the terrain byte at the given coordinates
+    byte get(int y, int x);
+
+    // set(y, x, byte) sets the terrain byte at the given coordinates
+    void set(int y, int x, byte tile);
+
+    // copy() returns an independent copy of the terrain
+    // @throws : UnsupportedOperationException if the store cannot be copied
+    TileStore copy();
+
+    // flush() writes any changed terrain back to where it was loaded from
+    // @throws : IOException if writing fails
+    void flush() throws IOException;
+
+    // close() flushes then releases any file held by the store
+    // @throws : IOException if writing or closing fails
+    void close() throws IOException;
+}
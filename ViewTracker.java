@@ -0,0 +1,99 @@
+// remembers the last window a client was sent so later looks only send the tiles that changed
+// rows the map reports unchanged since the last look (see Map.getRowVersion()) are not compared at all
+//
+// response format, the first line saying which kind follows:
+//   FULL                   followed by the whole window as the look command sends it
+//   DELTA dy dx n          the window moved by dy rows and dx columns, followed by n lines "row col tile"
+//                          giving the tiles that differ from the previous window moved by (dy, dx)
+// the full window is sent for the first look, after the map is replaced and whenever it would be shorter
+public class ViewTracker {
+    // window filled on every look
+    private final Viewport current;
+    // tiles of the window sent last, row by row, in the same layout as the viewport
+    private final char[] previous;
+    // map and map version at the last look, and where the window was centred
+    private Map lastMap;
+    private long lastVersion;
+    private int lastY;
+    private int lastX;
+    // tiles found changed by the last look, as window row * side + column
+    private final int[] changed;
+
+    // Constructor
+    // @param : radius of the window, 2 giving the 5x5 look
+    public ViewTracker(int radius) {
+        current = new Viewport(radius);
+        previous = new char[current.getSide() * current.getSide()];
+        changed = new int[previous.length];
+    }
+
+    // getRadius() returns the radius of the tracked window
+    public int getRadius() {
+        return current.getRadius();
+    }
+
+    // reset() forgets the last window so the next look sends the full window
+    public void reset() {
+        lastMap = null;
+    }
+
+    // lookDelta(Map, int, int, StringBuilder) looks at the map around chosen coordinates and appends
+    // what changed since the previous look
+    // @param : the map, y and x coordinates of the centre and the builder to append the response to
+    public void lookDelta(Map map, int cy, int cx, StringBuilder out) {
+        int side = current.getSide();
+        int radius = current.getRadius();
+        map.fillView(current, cy, cx);
+        if (lastMap != map) {
+            full(map, cy, cx, out);
+            return;
+        }
+        int dy = cy - lastY;
+        int dx = cx - lastX;
+        int count = 0;
+        for (int row = 0; row < side; row++) {
+            int y = cy - radius + row;
+            int oldRow = row + dy;
+            boolean oldRowInView = oldRow >= 0 && oldRow < side;
+            // a row still in view, in the same columns, that the map has not touched cannot have changed
+            if (oldRowInView && dx == 0 && (y < 0 || y >= map.getHeight() || map.getRowVersion(y) <= lastVersion)) {
+                continue;
+            }
+            for (int col = 0; col < side; col++) {
+                int oldCol = col + dx;
+                char tile = current.get(row, col);
+                if (!oldRowInView || oldCol < 0 || oldCol >= side || previous[oldRow * side + oldCol] != tile) {
+                    changed[count++] = row * side + col;
+                }
+            }
+        }
+        // each changed tile takes at least 6 characters ("r c t\n"), against side + 1 for each row of the full window
+        if (count * 6 >= side * (side + 1)) {
+            full(map, cy, cx, out);
+            return;
+        }
+        out.append("DELTA ").append(dy).append(' ').append(dx).append(' ').append(count).append('\n');
+        for (int i = 0; i < count; i++) {
+            int row = changed[i] / side;
+            int col = changed[i] % side;
+            out.append(row).append(' ').append(col).append(' ').append(current.get(row, col)).append('\n');
+        }
+        remember(map, cy, cx);
+    }
+
+    // full(Map, int, int, StringBuilder) appends the whole window and remembers it
+    private void full(Map map, int cy, int cx, StringBuilder out) {
+        out.append("FULL\n");
+        current.render(out);
+        remember(map, cy, cx);
+    }
+
+    // remember(Map, int, int) keeps the window just sent to compare the next look against
+    private void remember(Map map, int cy, int cx) {
+        System.arraycopy(current.cells(), 0, previous, 0, previous.length);
+        lastMap = map;
+        lastVersion = map.getVersion();
+        lastY = cy;
+        lastX = cx;
+    }
+}
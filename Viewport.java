@@ -0,0 +1,100 @@
+// square window of the map centred on a position, filled in place by Map.fillView()
+// a viewport is created once and reused for every look, so looking allocates nothing;
+// text is only built by render() for human players
+public class Viewport {
+    // tiles from the centre to the edge of the window (2 gives the 5x5 look)
+    private final int radius;
+    // number of tiles along each side
+    private final int side;
+    // tiles of the window, row by row
+    private final char[] cells;
+    // map coordinates of the centre tile at the last fill
+    private int centreY;
+    private int centreX;
+
+    // Constructor
+    // @param : radius of the window
+    public Viewport(int radius) {
+        this.radius = radius;
+        side = radius * 2 + 1;
+        cells = new char[side * side];
+    }
+
+    // Copy constructor
+    // @param : the viewport to copy
+    public Viewport(Viewport other) {
+        radius = other.radius;
+        side = other.side;
+        cells = other.cells.clone();
+        centreY = other.centreY;
+        centreX = other.centreX;
+    }
+
+    // ACCESSORS
+    // getRadius() returns the number of tiles from the centre to the edge
+    public int getRadius() {
+        return radius;
+    }
+
+    // getSide() returns the number of tiles along each side
+    public int getSide() {
+        return side;
+    }
+
+    // getCentreY() returns the map y coordinate of the centre at the last fill
+    public int getCentreY() {
+        return centreY;
+    }
+
+    // getCentreX() returns the map x coordinate of the centre at the last fill
+    public int getCentreX() {
+        return centreX;
+    }
+
+    // get(int, int) returns a tile of the window, outside the map shows as a wall '#'
+    // @param : row and column within the window, (radius, radius) being the centre
+    // @return : the tile character
+    public char get(int row, int col) {
+        return cells[row * side + col];
+    }
+
+    // render(StringBuilder) appends the window as text, one row per line (the look response)
+    // @param : the builder to append to
+    public void render(StringBuilder out) {
+        for (int row = 0; row < side; row++) {
+            out.append(cells, row * side, side).append('\n');
+        }
+    }
+
+    // format display of the window as the look response
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(side * (side + 1));
+        render(out);
+        return out.toString();
+    }
+
+    // parse(String) fills the window from a look response, for clients that only have the text
+    // @param : the look response, one row per line
+    public void parse(String text) {
+        int n = 0;
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                cells[row * side + col] = text.charAt(n++);
+            }
+            // skip the newline at the end of the row
+            n += 1;
+        }
+    }
+
+    // cells() returns the tile array for Map.fillView() to write into
+    char[] cells() {
+        return cells;
+    }
+
+    // setCentre(int, int) records the map coordinates the window was filled around
+    void setCentre(int y, int x) {
+        centreY = y;
+        centreX = x;
+    }
+}
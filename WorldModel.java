@@ -0,0 +1,262 @@
+// a bot's memory of the map, built up from everything it has seen through look
+// tiles are stored by absolute map coordinates in a grid that grows as more of the map is explored
+// tiles never seen are unknown; as a Grid, unknown tiles are treated as walkable (optimistic planning)
+public class WorldModel implements Grid {
+    // value of a tile that has not been seen
+    public static final byte UNKNOWN = 0;
+
+    // known tiles, row by row, (y - originY) * width + (x - originX) for absolute coordinates (y,x)
+    private byte[] tiles = new byte[0];
+    // absolute coordinates of the top left tile of the grid
+    private int originY;
+    private int originX;
+    // size of the grid
+    private int height;
+    private int width;
+    // cells (grid index) whose walkability may have changed since the last call to takeChanges()
+    private int[] changed = new int[32];
+    private int changedCount;
+    // number of times the grid has grown, grid indices from before a growth are no longer valid
+    private int growths;
+    // known gold and exit tiles, packed absolute coordinates ((long) y << 32 | x)
+    private long[] gold = new long[8];
+    private int goldCount;
+    private long[] exits = new long[8];
+    private int exitCount;
+
+    // the same grid seen with only known tiles walkable, for searches that must stay on explored ground
+    private final Grid known = new Grid() {
+        public int getHeight() {
+            return height;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public boolean isWalkable(int y, int x) {
+            byte tile = tiles[y * width + x];
+            return tile != UNKNOWN && tile != '#';
+        }
+    };
+
+    // Constructor - creates an empty model, nothing seen yet
+    public WorldModel() {
+    }
+
+    // Copy constructor
+    // @param : the model to copy
+    public WorldModel(WorldModel other) {
+        tiles = other.tiles.clone();
+        originY = other.originY;
+        originX = other.originX;
+        height = other.height;
+        width = other.width;
+        changed = other.changed.clone();
+        changedCount = other.changedCount;
+        growths = other.growths;
+        gold = other.gold.clone();
+        goldCount = other.goldCount;
+        exits = other.exits.clone();
+        exitCount = other.exitCount;
+    }
+
+    // merge(Viewport, int, int, char) adds a square view centred on an absolute position to the model
+    // players and bots in the view are not terrain, the tile under them is kept if known or taken as empty
+    // @param : the view, absolute y and x of its centre and the terrain under the viewer at the centre
+    public void merge(Viewport view, int cy, int cx, char centreTile) {
+        int radius = view.getRadius();
+        int side = view.getSide();
+        ensureCovers(cy - radius, cx - radius, cy + radius, cx + radius);
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                char c = (i == radius && j == radius) ? centreTile : view.get(i, j);
+                int y = cy - radius + i;
+                int x = cx - radius + j;
+                int cell = (y - originY) * width + (x - originX);
+                byte old = tiles[cell];
+                if (Map.isEntity(c)) {
+                    c = old == UNKNOWN ? '.' : (char) old;
+                }
+                if (old != (byte) c) {
+                    set(cell, y, x, old, (byte) c);
+                }
+            }
+        }
+    }
+
+    // get(y, x) returns the known tile at absolute coordinates
+    // @return : tile character, or UNKNOWN if never seen
+    public byte get(int y, int x) {
+        int gy = y - originY;
+        int gx = x - originX;
+        if (gy < 0 || gx < 0 || gy >= height || gx >= width) {
+            return UNKNOWN;
+        }
+        return tiles[gy * width + gx];
+    }
+
+    // nearestGold(int, int) returns the known gold tile closest (Manhattan distance) to an absolute position
+    // @return : absolute coordinates (y,x), or null if no gold is known
+    public int[] nearestGold(int y, int x) {
+        return nearest(gold, goldCount, y, x);
+    }
+
+    // nearestExit(int, int) returns the known exit tile closest (Manhattan distance) to an absolute position
+    // @return : absolute coordinates (y,x), or null if no exit is known
+    public int[] nearestExit(int y, int x) {
+        return nearest(exits, exitCount, y, x);
+    }
+
+    // knownGrid() returns the model as a Grid where only known, non-wall tiles are walkable
+    public Grid knownGrid() {
+        return known;
+    }
+
+    // isFrontier(int, int) returns if a grid cell is known ground next to an unknown tile (or the grid edge)
+    // @param : grid coordinates (not absolute)
+    public boolean isFrontier(int gy, int gx) {
+        if (gy == 0 || gx == 0 || gy == height - 1 || gx == width - 1) {
+            return true;
+        }
+        int cell = gy * width + gx;
+        return tiles[cell - 1] == UNKNOWN || tiles[cell + 1] == UNKNOWN
+                || tiles[cell - width] == UNKNOWN || tiles[cell + width] == UNKNOWN;
+    }
+
+    // takeChanges() returns the cells changed since the last call and forgets them
+    // @return : number of changed cells, their grid indices are in getChanged()
+    public int takeChanges() {
+        int n = changedCount;
+        changedCount = 0;
+        return n;
+    }
+
+    // getChanged() returns the array of changed grid indices filled by takeChanges()
+    public int[] getChanged() {
+        return changed;
+    }
+
+    // ACCESSORS for converting between absolute and grid coordinates
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getGrowths() {
+        return growths;
+    }
+
+    // Grid methods, unknown tiles count as walkable
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public boolean isWalkable(int y, int x) {
+        return tiles[y * width + x] != '#';
+    }
+
+    // set(int, int, int, byte, byte) changes a known tile and keeps the gold/exit lists and change list up to date
+    private void set(int cell, int y, int x, byte old, byte tile) {
+        tiles[cell] = tile;
+        long packed = ((long) y << 32) | (x & 0xFFFFFFFFL);
+        if (old == 'G') {
+            goldCount = removeFrom(gold, goldCount, packed);
+        } else if (old == 'E') {
+            exitCount = removeFrom(exits, exitCount, packed);
+        }
+        if (tile == 'G') {
+            gold = addTo(gold, goldCount++, packed);
+        } else if (tile == 'E') {
+            exits = addTo(exits, exitCount++, packed);
+        }
+        // only a change between wall and not wall (unknown counts as walkable) matters to planning
+        if ((old == '#') != (tile == '#')) {
+            if (changedCount == changed.length) {
+                changed = java.util.Arrays.copyOf(changed, changed.length * 2);
+            }
+            changed[changedCount++] = cell;
+        }
+    }
+
+    // ensureCovers(int, int, int, int) grows the grid so it covers an absolute rectangle
+    // the grid at least doubles each time it grows so growing is rare
+    private void ensureCovers(int y0, int x0, int y1, int x1) {
+        if (height > 0 && y0 >= originY && x0 >= originX && y1 < originY + height && x1 < originX + width) {
+            return;
+        }
+        int newY0;
+        int newX0;
+        int newHeight;
+        int newWidth;
+        if (height == 0) {
+            newHeight = Math.max(32, y1 - y0 + 1);
+            newWidth = Math.max(32, x1 - x0 + 1);
+            newY0 = (y0 + y1) / 2 - newHeight / 2;
+            newX0 = (x0 + x1) / 2 - newWidth / 2;
+        } else {
+            int minY = Math.min(y0, originY);
+            int minX = Math.min(x0, originX);
+            int maxY = Math.max(y1, originY + height - 1);
+            int maxX = Math.max(x1, originX + width - 1);
+            newHeight = Math.max(maxY - minY + 1, height * 2);
+            newWidth = Math.max(maxX - minX + 1, width * 2);
+            // grow towards the side that ran out of room
+            newY0 = y0 < originY ? maxY - newHeight + 1 : minY;
+            newX0 = x0 < originX ? maxX - newWidth + 1 : minX;
+        }
+        byte[] grown = new byte[newHeight * newWidth];
+        for (int i = 0; i < height; i++) {
+            System.arraycopy(tiles, i * width, grown,
+                    (originY + i - newY0) * newWidth + (originX - newX0), width);
+        }
+        tiles = grown;
+        originY = newY0;
+        originX = newX0;
+        height = newHeight;
+        width = newWidth;
+        changedCount = 0;
+        growths += 1;
+    }
+
+    private static int[] nearest(long[] cells, int count, int y, int x) {
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int distance = Math.abs((int) (cells[i] >> 32) - y) + Math.abs((int) cells[i] - x);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best < 0 ? null : new int[]{(int) (cells[best] >> 32), (int) cells[best]};
+    }
+
+    private static long[] addTo(long[] cells, int count, long packed) {
+        if (count == cells.length) {
+            cells = java.util.Arrays.copyOf(cells, count * 2);
+        }
+        cells[count] = packed;
+        return cells;
+    }
+
+    private static int removeFrom(long[] cells, int count, long packed) {
+        for (int i = 0; i < count; i++) {
+            if (cells[i] == packed) {
+                cells[i] = cells[count - 1];
+                return count - 1;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,62 @@
+package dungeonofdoom;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// compares the results of two runs of GameBenchmarks, written by JMH with -rf json, and flags the slowdowns
+//
+// usage: java -cp benchmarks/target/benchmarks.jar dungeonofdoom.BenchmarkCompare [old json] [new json]
+//        [allowed slowdown %]
+public class BenchmarkCompare {
+    // readScores(String) reads the score of each benchmark from a results file
+    // the primary score is the first after each benchmark's name, secondary metrics come after it
+    private static LinkedHashMap<String, Double> readScores(String file) throws IOException {
+        String json = Files.readString(Path.of(file));
+        Matcher matcher = Pattern.compile("\"benchmark\"\\s*:\\s*\"([^\"]+)\".*?\"score\"\\s*:\\s*([-0-9.eE]+)",
+                Pattern.DOTALL).matcher(json);
+        LinkedHashMap<String, Double> scores = new LinkedHashMap<>();
+        while (matcher.find()) {
+            scores.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+        }
+        return scores;
+    }
+
+    // compare(String, String, double) prints the change of every benchmark in both files
+    // @return : number of benchmarks slower by more than the allowed percentage
+    private static int compare(String oldFile, String newFile, double allowedPercent) throws IOException {
+        LinkedHashMap<String, Double> before = readScores(oldFile);
+        LinkedHashMap<String, Double> after = readScores(newFile);
+        int regressions = 0;
+        for (java.util.Map.Entry<String, Double> entry : after.entrySet()) {
+            Double old = before.get(entry.getKey());
+            if (old == null) {
+                continue;
+            }
+            double change = (entry.getValue() - old) / old * 100;
+            boolean regressed = change > allowedPercent;
+            if (regressed) {
+                regressions += 1;
+            }
+            System.out.printf(Locale.ROOT, "%-60s %14.1f -> %14.1f ns/op %+8.1f%%%s%n", entry.getKey(), old,
+                    entry.getValue(), change, regressed ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    // main method - compares two result files
+    // exits with status 1 if the comparison finds a regression
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java -cp benchmarks.jar dungeonofdoom.BenchmarkCompare <old json> <new json>"
+                    + " [allowed slowdown %]");
+            System.exit(2);
+        }
+        int regressions = compare(args[0], args[1], args.length > 2 ? Double.parseDouble(args[2]) : 10.0);
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,243 @@
+package dungeonofdoom;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH benchmarks of the game's hot paths
+// JMH only runs benchmarks in a named package, and the game's classes are in the default package, which a named
+// package cannot refer to; so this module compiles its own copy of the game's sources into this package (see
+// pom.xml) and the benchmarks call the game directly, with package access
+// run with java -jar benchmarks/target/benchmarks.jar -rf json, and compare two runs with BenchmarkCompare
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class GameBenchmarks {
+    // a player on a mostly open map, and the text of what they see
+    @State(Scope.Thread)
+    public static class Looking {
+        GameLogic game;
+        HumanPlayer player;
+        Viewport view;
+        String miniMap;
+
+        @Setup
+        public void setUp() throws IOException {
+            game = new GameLogic(new Map(writeMap("bench-open", 200, 200, 0.05, 1)), 1, 1, 0);
+            player = game.getPlayer();
+            view = new Viewport(2);
+            miniMap = game.look(player);
+        }
+    }
+
+    // a player with two opposite directions to step back and forth in
+    @State(Scope.Thread)
+    public static class Moving {
+        GameLogic game;
+        HumanPlayer player;
+        String[] steps;
+        int step;
+
+        @Setup
+        public void setUp() throws IOException {
+            game = new GameLogic(new Map(writeMap("bench-open", 200, 200, 0.05, 1)), 2, 1, 0);
+            player = game.getPlayer();
+            steps = openSteps(game.getMap(), player);
+        }
+    }
+
+    // commands for the only player of a game, valid and not, taken in turn
+    @State(Scope.Thread)
+    public static class Dispatching {
+        GameLogic game;
+        String[] commands;
+        int command;
+
+        @Setup
+        public void setUp() throws IOException {
+            game = new GameLogic(new Map(writeMap("bench-open", 200, 200, 0.05, 1)), 3, 1, 0);
+            String[] steps = openSteps(game.getMap(), game.getPlayer());
+            commands = new String[]{"gold", "HELLO", "look", "x", steps[0], steps[1]};
+        }
+    }
+
+    // a bot and the look response it reads, and the view as a grid for path searches to each of its tiles
+    @State(Scope.Thread)
+    public static class Viewing {
+        String miniMap;
+        BotPlayer bot;
+        PathFinder pathFinder;
+        Grid nearby;
+        int target;
+
+        @Setup
+        public void setUp() throws IOException {
+            GameLogic game = new GameLogic(new Map(writeMap("bench-open", 200, 200, 0.05, 1)), 1, 1, 0);
+            HumanPlayer player = game.getPlayer();
+            miniMap = game.look(player);
+            bot = new BotPlayer(0, player.getY(), player.getX(), '.', 'B', new CopyableRandom(5));
+            pathFinder = new PathFinder();
+            String view = miniMap;
+            nearby = new Grid() {
+                public int getHeight() {
+                    return 5;
+                }
+
+                public int getWidth() {
+                    return 5;
+                }
+
+                public boolean isWalkable(int y, int x) {
+                    return view.charAt(y * 6 + x) != '#';
+                }
+            };
+        }
+    }
+
+    // map files to load: small and huge text maps, and the huge one compiled
+    @State(Scope.Benchmark)
+    public static class MapFiles {
+        String small;
+        String huge;
+        String hugeCompiled;
+
+        @Setup
+        public void setUp() throws IOException {
+            small = writeMap("bench-small", 20, 40, 0.2, 3);
+            huge = writeMap("bench-huge", 2000, 2000, 0.2, 4);
+            Path compiled = Files.createTempFile("bench-huge", ".dodm");
+            compiled.toFile().deleteOnExit();
+            CompiledMap.write(MapLoader.load(huge), compiled);
+            hugeCompiled = compiled.toString();
+        }
+    }
+
+    // games with no one in them yet, on a mostly open and a mostly walled map
+    @State(Scope.Thread)
+    public static class Spawning {
+        GameLogic sparse;
+        GameLogic dense;
+
+        @Setup
+        public void setUp() throws IOException {
+            sparse = new GameLogic(new Map(writeMap("bench-open", 200, 200, 0.05, 1)), 4, 0, 0);
+            dense = new GameLogic(new Map(writeMap("bench-dense", 200, 200, 0.98, 2)), 5, 0, 0);
+        }
+    }
+
+    // look around a player, as text and into a reused viewport
+    @Benchmark
+    public int look(Looking s) {
+        return s.game.look(s.player).length();
+    }
+
+    @Benchmark
+    public char lookViewport(Looking s) {
+        s.game.look(s.player, s.view);
+        return s.view.get(0, 0);
+    }
+
+    // a player stepping back and forth
+    @Benchmark
+    public int movement(Moving s) {
+        return s.game.movement(s.player, s.steps[s.step++ & 1]).length();
+    }
+
+    // parsing and dispatching commands, the turn passing straight back to the only player
+    @Benchmark
+    public int process(Dispatching s) {
+        String command = s.commands[s.command];
+        s.command = s.command + 1 < s.commands.length ? s.command + 1 : 0;
+        return s.game.process(command).length();
+    }
+
+    // the bot reading a look response, and a search like the one the bot makes to a tile in view
+    @Benchmark
+    public char botSetNearby(Viewing s) {
+        s.bot.setNearby(s.miniMap);
+        return s.bot.getView().get(2, 2);
+    }
+
+    @Benchmark
+    public int pathFinderFindPathInView(Viewing s) {
+        s.target = s.target + 1 < 25 ? s.target + 1 : 0;
+        return s.pathFinder.findPath(s.nearby, 2, 2, s.target / 5, s.target % 5);
+    }
+
+    // loading maps from file, through the loader Map.readMap() uses (readMap() also prints the map name)
+    @Benchmark
+    public int readMapSmall(MapFiles s) throws IOException {
+        return MapLoader.load(s.small).getWidth();
+    }
+
+    @Benchmark
+    public int readMapHuge(MapFiles s) throws IOException {
+        return MapLoader.load(s.huge).getWidth();
+    }
+
+    @Benchmark
+    public int readMapHugeCompiled(MapFiles s) throws IOException {
+        return MapLoader.load(s.hugeCompiled).getWidth();
+    }
+
+    // choosing spawn points on mostly open and mostly walled maps
+    @Benchmark
+    public int generateSpawnSparse(Spawning s) {
+        return s.sparse.generateSpawn()[0];
+    }
+
+    @Benchmark
+    public int generateSpawnDense(Spawning s) {
+        return s.dense.generateSpawn()[0];
+    }
+
+    // writeMap(String, int, int, double, long) writes a random map with walls round the edge to a temporary file
+    // @param : name, rows, columns, chance of a wall inside and seed
+    // @return : the file location
+    static String writeMap(String name, int height, int width, double walls, long seed) throws IOException {
+        Random rand = new Random(seed);
+        StringBuilder text = new StringBuilder("name ").append(name).append("\nwin 2\n");
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean edge = y == 0 || x == 0 || y == height - 1 || x == width - 1;
+                double r = rand.nextDouble();
+                text.append(edge || r < walls ? '#' : r < walls + 0.01 ? 'G' : r < walls + 0.012 ? 'E' : '.');
+            }
+            text.append('\n');
+        }
+        Path file = Files.createTempFile(name, ".txt");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, text, StandardCharsets.US_ASCII);
+        return file.toString();
+    }
+
+    // openSteps(Map, Player) returns two opposite directions the player can step back and forth in
+    static String[] openSteps(Map map, Player player) {
+        int y = player.getY();
+        int x = player.getX();
+        if (map.getTerrain(y - 1, x) != '#') {
+            return new String[]{"n", "s"};
+        } else if (map.getTerrain(y + 1, x) != '#') {
+            return new String[]{"s", "n"};
+        } else if (map.getTerrain(y, x + 1) != '#') {
+            return new String[]{"e", "w"};
+        }
+        return new String[]{"w", "e"};
+    }
+}
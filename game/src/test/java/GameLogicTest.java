@@ -0,0 +1,52 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// checks of game rules that depend on more than one player
+public class GameLogicTest {
+    // map(String...) returns a map of the given rows, needing one gold to win
+    private static Map map(String... rows) {
+        int width = rows[0].length();
+        byte[] terrain = new byte[rows.length * width];
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < width; x++) {
+                terrain[y * width + x] = (byte) rows[y].charAt(x);
+            }
+        }
+        return new Map("Test", 1, rows.length, width, new ArrayTileStore(terrain, width));
+    }
+
+    // two players on one gold tile, taking turns: only the first to pick up gets the gold
+    @Test
+    public void goldSharedByTwoPlayersIsPickedUpOnce() {
+        GameLogic game = new GameLogic(map("#####", "#.G.#", "#####"), 1, 2, 0);
+        HumanPlayer first = (HumanPlayer) game.getCurrentPlayer();
+        game.execute(first.getX() == 1 ? GameLogic.OP_EAST : GameLogic.OP_WEST);
+        HumanPlayer second = (HumanPlayer) game.getCurrentPlayer();
+        game.execute(second.getX() == 1 ? GameLogic.OP_EAST : GameLogic.OP_WEST);
+        assertEquals(first.getX(), second.getX());
+
+        assertEquals("Success. Gold owned: 1", game.execute(GameLogic.OP_PICKUP));
+        assertEquals('.', second.getCurrentTile());
+        assertEquals("Fail. Gold owned: 0", game.execute(GameLogic.OP_PICKUP));
+        assertEquals(1, first.getGold() + second.getGold());
+    }
+
+    // the same in simultaneous mode, both picking up in one tick
+    @Test
+    public void goldSharedInOneTickIsPickedUpOnce() {
+        GameLogic game = new GameLogic(map("#####", "#.G.#", "#####"), 1, 2, 0);
+        game.setSimultaneous(true);
+        HumanPlayer first = game.getPlayers().get(0);
+        HumanPlayer second = game.getPlayers().get(1);
+        game.execute(first.getX() == 1 ? GameLogic.OP_EAST : GameLogic.OP_WEST);
+        game.execute(second.getX() == 1 ? GameLogic.OP_EAST : GameLogic.OP_WEST);
+        assertEquals("Success", game.takeResponse(first));
+        assertEquals("Success", game.takeResponse(second));
+
+        game.execute(GameLogic.OP_PICKUP);
+        game.execute(GameLogic.OP_PICKUP);
+        assertEquals("Success. Gold owned: 1", game.takeResponse(first));
+        assertEquals("Fail. Gold owned: 0", game.takeResponse(second));
+    }
+}